@@ -93,4 +93,14 @@ public final class Constants {
     public static final int MAX_LENGTH = 50;
 
     // add any constants you think you may use
+    public static final String BATCH_WORKERS = "batch.workers";
+    public static final String BATCH_IN_FLIGHT = "batch.inflight";
+    public static final String ACTION_WORKERS = "actions.workers";
+    public static final String ACTION_PIPELINE = "actions.pipeline";
+    public static final int USER_STRIPES = 64;
+    public static final String COMMANDS_LOG = "commands.log";
+    public static final String COMMANDS_SYNC = "commands.sync";
+    public static final String COMMANDS_GROUP = "commands.group";
+    public static final int COMMANDS_GROUP_SIZE = 256;
+    public static final String LOG_EXTENSION = ".log";
 }
@@ -0,0 +1,91 @@
+package database;
+
+/**
+ * Locks taken by the {@link Repository} around every action.
+ * <p>
+ * User state (history, favorites, ratings, seen videos) is guarded per user, and the rating
+ * of a video per video. The view and favorite counters need no lock of their own. A gate
+ * over the shared state orders the commands with the versions of the metrics: a command holds
+ * the shared side while it changes the metrics, so commands run in parallel, and the exclusive
+ * side is held while a version records the changes, or while a title is added to the title
+ * table. Locks are taken in this order: user, gate, video.
+ * The serial mode uses {@link #NONE}, which does nothing.
+ */
+public interface AccessLocks {
+    /**
+     * locks that do nothing, for a repository used by a single thread
+     */
+    AccessLocks NONE = new AccessLocks() {
+        @Override
+        public void lockUser(final int userId) {
+        }
+
+        @Override
+        public void unlockUser(final int userId) {
+        }
+
+        @Override
+        public void lockVideo(final int videoId) {
+        }
+
+        @Override
+        public void unlockVideo(final int videoId) {
+        }
+
+        @Override
+        public void lockShared() {
+        }
+
+        @Override
+        public void unlockShared() {
+        }
+
+        @Override
+        public void lockExclusive() {
+        }
+
+        @Override
+        public void unlockExclusive() {
+        }
+    };
+
+    /**
+     * @param userId id of the user whose state is used
+     */
+    void lockUser(int userId);
+
+    /**
+     * @param userId id of the user whose state was used
+     */
+    void unlockUser(int userId);
+
+    /**
+     * @param videoId id of the video whose rating is changed, any title id
+     */
+    void lockVideo(int videoId);
+
+    /**
+     * @param videoId id of the video whose rating was changed
+     */
+    void unlockVideo(int videoId);
+
+    /**
+     * takes the shared side of the gate, held by commands and title lookups
+     */
+    void lockShared();
+
+    /**
+     * releases the shared side of the gate
+     */
+    void unlockShared();
+
+    /**
+     * takes the exclusive side of the gate, once no command is running
+     */
+    void lockExclusive();
+
+    /**
+     * releases the exclusive side of the gate
+     */
+    void unlockExclusive();
+}
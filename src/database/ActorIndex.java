@@ -0,0 +1,294 @@
+package database;
+
+import actor.ActorsAwards;
+import fileio.ActorInputData;
+import models.Actor;
+import utils.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Holds the actors, indexed by actor id, and the indexes used by the actor queries.
+ * Every catalog video knows the actors that played in it, so rating a video only
+ * updates the filmography means of those actors.
+ * Career descriptions are split in words once, into an inverted index from every word
+ * to the ids of the actors whose description contains it, and every award knows the
+ * actors that won it.
+ */
+public final class ActorIndex {
+    private static final int[] NO_ACTORS = new int[0];
+
+    private final SymbolTable names;
+    private final Actor[] actors;
+    /**
+     * ids of the actors that played in a video, by video id
+     */
+    private final int[][] actorsByVideo;
+    /**
+     * ids of the actors having a word in their description, sorted, by word
+     */
+    private final Map<String, int[]> actorsByWord;
+    /**
+     * ids of the actors that won an award, sorted, by award ordinal
+     */
+    private final int[][] actorsByAward;
+
+    /**
+     * @param actorsData input actors
+     * @param catalog catalog of all videos
+     */
+    public ActorIndex(final List<ActorInputData> actorsData, final Catalog catalog) {
+        this.names = new SymbolTable();
+        ArrayList<Actor> actorList = new ArrayList<>();
+        if (actorsData != null) {
+            for (ActorInputData actorData : actorsData) {
+                int id = this.names.intern(actorData.getName());
+                Actor actor = new Actor(actorData, id, catalog);
+                if (id == actorList.size()) {
+                    actorList.add(actor);
+                } else {
+                    actorList.set(id, actor);
+                }
+            }
+        }
+        this.actors = actorList.toArray(new Actor[0]);
+
+        List<List<Integer>> byVideo = new ArrayList<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            byVideo.add(new ArrayList<>());
+        }
+        for (Actor actor : this.actors) {
+            for (int videoId : actor.getFilmography()) {
+                List<Integer> videoActors = byVideo.get(videoId);
+                // a title can appear twice in a filmography
+                if (videoActors.isEmpty()
+                    || videoActors.get(videoActors.size() - 1) != actor.getId()) {
+                    videoActors.add(actor.getId());
+                }
+            }
+            actor.updateRatingMean(catalog);
+        }
+        this.actorsByVideo = new int[byVideo.size()][];
+        for (int videoId = 0; videoId < this.actorsByVideo.length; videoId++) {
+            this.actorsByVideo[videoId] = byVideo.get(videoId).stream()
+                    .mapToInt(Integer::intValue).toArray();
+        }
+
+        Map<String, List<Integer>> byWord = new HashMap<>();
+        for (Actor actor : this.actors) {
+            for (String word : Actor.descriptionWords(actor.getCareerDescription())) {
+                byWord.computeIfAbsent(word, w -> new ArrayList<>()).add(actor.getId());
+            }
+        }
+        this.actorsByWord = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : byWord.entrySet()) {
+            this.actorsByWord.put(entry.getKey(), entry.getValue().stream()
+                    .mapToInt(Integer::intValue).toArray());
+        }
+
+        ActorsAwards[] awards = ActorsAwards.values();
+        this.actorsByAward = new int[awards.length][];
+        for (ActorsAwards award : awards) {
+            this.actorsByAward[award.ordinal()] = Arrays.stream(this.actors)
+                    .filter(actor -> actor.getAwards().containsKey(award))
+                    .mapToInt(Actor::getId).toArray();
+        }
+    }
+
+    /**
+     * reads the actors and the indexes written by {@link #write}
+     * @param in snapshot placed on the actors
+     * @param catalog catalog of all videos
+     */
+    ActorIndex(final DatabaseSnapshot.Reader in, final Catalog catalog) {
+        ActorsAwards[] awards = ActorsAwards.values();
+        this.names = SymbolTable.read(in);
+        this.actors = new Actor[this.names.size()];
+        for (int id = 0; id < this.actors.length; id++) {
+            String description = in.readString();
+            int[] filmography = in.readInts();
+            int[] awardCounts = in.readInts();
+            EnumMap<ActorsAwards, Integer> actorAwards = new EnumMap<>(ActorsAwards.class);
+            for (int i = 0; i < awardCounts.length; i += 2) {
+                actorAwards.put(awards[awardCounts[i]], awardCounts[i + 1]);
+            }
+            this.actors[id] = new Actor(id, this.names.getName(id), description, filmography,
+                                        actorAwards);
+            this.actors[id].updateRatingMean(catalog);
+        }
+
+        this.actorsByVideo = new int[in.readInt()][];
+        for (int videoId = 0; videoId < this.actorsByVideo.length; videoId++) {
+            this.actorsByVideo[videoId] = in.readInts();
+        }
+        int numWords = in.readInt();
+        this.actorsByWord = new HashMap<>();
+        for (int i = 0; i < numWords; i++) {
+            String word = in.readString();
+            this.actorsByWord.put(word, in.readInts());
+        }
+        this.actorsByAward = new int[awards.length][];
+        for (int award = 0; award < awards.length; award++) {
+            this.actorsByAward[award] = in.readInts();
+        }
+    }
+
+    /**
+     * writes the actor table, the actors with their filmography encoded to video ids, and
+     * the indexes by video, word and award
+     * @param out snapshot being written
+     * @throws IOException in case of exceptions to writing
+     */
+    void write(final DatabaseSnapshot.Writer out) throws IOException {
+        this.names.write(out);
+        for (Actor actor : this.actors) {
+            out.writeString(actor.getCareerDescription());
+            out.writeInts(actor.getFilmography());
+            // award ordinal and count, for every award
+            out.writeInts(actor.getAwards().entrySet().stream()
+                                  .flatMapToInt(award -> Arrays.stream(new int[] {
+                                      award.getKey().ordinal(), award.getValue()}))
+                                  .toArray());
+        }
+        out.writeInt(this.actorsByVideo.length);
+        for (int[] ids : this.actorsByVideo) {
+            out.writeInts(ids);
+        }
+        out.writeInt(this.actorsByWord.size());
+        // in word order, so the same database always gives the same file
+        for (Map.Entry<String, int[]> entry : new TreeMap<>(this.actorsByWord).entrySet()) {
+            out.writeString(entry.getKey());
+            out.writeInts(entry.getValue());
+        }
+        for (int[] ids : this.actorsByAward) {
+            out.writeInts(ids);
+        }
+    }
+
+    public Actor[] getActors() {
+        return actors;
+    }
+
+    public SymbolTable getNames() {
+        return names;
+    }
+
+    /**
+     * gets the actors that played in a video
+     * @param videoId video id
+     * @return actor ids
+     */
+    public int[] getActorsOf(final int videoId) {
+        if (videoId < 0 || videoId >= this.actorsByVideo.length) {
+            return NO_ACTORS;
+        }
+        return this.actorsByVideo[videoId];
+    }
+
+    /**
+     * finds the actors whose description contains all the given words.
+     * The postings are intersected starting from the shortest one
+     * @param words words to be searched, in lower case
+     * @return actors found, in id order
+     */
+    public ArrayList<Actor> findByWords(final List<String> words) {
+        ArrayList<Actor> actorList = new ArrayList<>();
+        int[][] postings = new int[words.size()][];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = words.get(i) == null ? null : this.actorsByWord.get(words.get(i));
+            if (postings[i] == null) {
+                return actorList;
+            }
+        }
+        if (postings.length == 0) {
+            actorList.addAll(Arrays.asList(this.actors));
+            return actorList;
+        }
+        Arrays.sort(postings, Comparator.comparingInt(posting -> posting.length));
+
+        // the postings belong to the index, so the intersection is done on a copy
+        int[] result = postings[0].clone();
+        int size = result.length;
+        for (int i = 1; i < postings.length && size > 0; i++) {
+            size = intersect(result, size, postings[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            actorList.add(this.actors[result[i]]);
+        }
+        return actorList;
+    }
+
+    /**
+     * finds the actors that won all the given awards.
+     * Only the actors holding the rarest of the awards are checked
+     * @param awardNames names of the awards
+     * @return actors found, in id order
+     */
+    public ArrayList<Actor> findByAwards(final List<String> awardNames) {
+        ArrayList<Actor> actorList = new ArrayList<>();
+        long mask = 0;
+        int[] rarest = null;
+        for (String awardName : awardNames) {
+            ActorsAwards award = awardName == null ? null : Utils.stringToAwards(awardName);
+            if (award == null) {
+                return actorList;
+            }
+            mask |= Utils.awardBit(award);
+            int[] posting = this.actorsByAward[award.ordinal()];
+            if (rarest == null || posting.length < rarest.length) {
+                rarest = posting;
+            }
+        }
+        if (rarest == null) {
+            actorList.addAll(Arrays.asList(this.actors));
+            return actorList;
+        }
+
+        for (int actorId : rarest) {
+            if (this.actors[actorId].hasAllAwards(mask)) {
+                actorList.add(this.actors[actorId]);
+            }
+        }
+        return actorList;
+    }
+
+    /**
+     * intersects two sorted id arrays, keeping the result at the start of the first one
+     * @param ids first array, overwritten with the result
+     * @param size number of used elements in the first array
+     * @param other second array
+     * @return size of the intersection
+     */
+    private static int intersect(final int[] ids, final int size, final int[] other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < size && j < other.length; i++) {
+            while (j < other.length && other[j] < ids[i]) {
+                j++;
+            }
+            if (j < other.length && other[j] == ids[i]) {
+                ids[kept++] = ids[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * updates the filmography mean of the actors that played in a rated video
+     * @param videoId id of the rated video
+     * @param catalog catalog of all videos
+     */
+    public void videoRated(final int videoId, final Catalog catalog) {
+        for (int actorId : getActorsOf(videoId)) {
+            this.actors[actorId].updateRatingMean(catalog);
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package database;
+
+import fileio.MovieInputData;
+import fileio.SerialInputData;
+import fileio.ShowInput;
+import models.video.Movie;
+import models.video.Show;
+import models.video.ShowSeason;
+import models.video.Video;
+import utils.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Holds every movie and show, indexed by a dense video id.
+ * Catalog videos get the ids 0..size()-1, in input order (movies, then shows). Titles that
+ * are not in the catalog (found in histories or commands) are given ids after those, so
+ * users can still refer to them, but they have no video.
+ * <p>
+ * Genres are the names found in the catalog, compared exactly as written, like the input
+ * strings they stand for. Every name gets a genre id and a bit of the video genre masks.
+ * <p>
+ * The catalog keeps its leaderboards in order as the counters change, and serves them as the
+ * {@link VideoRankings} of the serial mode.
+ */
+public final class Catalog implements VideoRankings {
+    private static final byte MOVIE = 0;
+    private static final byte SHOW = 1;
+
+    private final SymbolTable titles;
+    /**
+     * genre names of the catalog, by genre id
+     */
+    private final SymbolTable genreNames;
+    /**
+     * genre ids of every catalog video, in input order, by video id
+     */
+    private final int[][] videoGenres;
+    private final VideoColumns columns;
+    private final Video[] videos;
+    private final int[] movieIds;
+    private final int[] showIds;
+    private final VideoIndex movieIndex;
+    private final VideoIndex showIndex;
+    /**
+     * genre ids in the order used to break ties between equally popular genres
+     */
+    private final int[] genreTieOrder;
+    private final GenreRanking genreRanking;
+    /**
+     * every catalog video, best rated first, used by the best unseen recommendation
+     */
+    private final Leaderboard<Video> bestRated;
+    /**
+     * videos added to favorite at least once, most favorite first
+     */
+    private final Leaderboard<Video> mostFavorite;
+    /**
+     * catalog videos of every genre sorted by rating, then by title, by genre id
+     */
+    private final List<Leaderboard<Video>> ratingByGenre;
+    /**
+     * orderings last made from a version of the metrics, used in the concurrent mode
+     */
+    private final SnapshotRankings.Latest latestRankings;
+
+    /**
+     * versions of the counters read by the queries, null in the serial mode, where the
+     * queries read the columns and the leaderboards
+     */
+    private final MetricVersions versions;
+
+    public Catalog(final List<MovieInputData> moviesData,
+                   final List<SerialInputData> showsData,
+                   final MetricVersions versions) {
+        this.versions = versions;
+        this.titles = new SymbolTable();
+        this.genreNames = new SymbolTable();
+        ArrayList<Video> videoList = new ArrayList<>();
+        ArrayList<int[]> genreList = new ArrayList<>();
+        this.columns = new VideoColumns((moviesData == null ? 0 : moviesData.size())
+                                        + (showsData == null ? 0 : showsData.size()),
+                                        versions != null);
+
+        this.movieIds = new int[moviesData == null ? 0 : moviesData.size()];
+        if (moviesData != null) {
+            for (int i = 0; i < this.movieIds.length; i++) {
+                MovieInputData movieData = moviesData.get(i);
+                int id = this.titles.intern(movieData.getTitle());
+                int[] genres = encodeGenres(movieData.getGenres());
+                Movie movie = new Movie(movieData, id, genreMask(genres), this.columns);
+                putVideo(videoList, id, movie);
+                putVideo(genreList, id, genres);
+                this.movieIds[i] = id;
+            }
+        }
+
+        this.showIds = new int[showsData == null ? 0 : showsData.size()];
+        if (showsData != null) {
+            for (int i = 0; i < this.showIds.length; i++) {
+                SerialInputData showData = showsData.get(i);
+                int id = this.titles.intern(showData.getTitle());
+                int[] genres = encodeGenres(showData.getGenres());
+                Show show = new Show(showData, id, genreMask(genres), this.columns);
+                putVideo(videoList, id, show);
+                putVideo(genreList, id, genres);
+                this.showIds[i] = id;
+            }
+        }
+
+        this.videos = videoList.toArray(new Video[0]);
+        this.videoGenres = genreList.toArray(new int[0][]);
+        this.genreTieOrder = computeGenreTieOrder(moviesData, showsData);
+        this.genreRanking = new GenreRanking(this.genreTieOrder);
+        this.bestRated = new Leaderboard<>(Video.BEST_RATED_ORDER, video -> true);
+        this.mostFavorite = new Leaderboard<>(Video.MOST_FAVORITE_ORDER,
+                                              video -> video.getNumFavorites() != 0);
+        this.ratingByGenre = new ArrayList<>();
+        for (int genre = 0; genre < this.genreNames.size(); genre++) {
+            this.ratingByGenre.add(new Leaderboard<>(Comparator.<Video>naturalOrder(),
+                                                     video -> true));
+        }
+        this.latestRankings = new SnapshotRankings.Latest(this.videos.length,
+                                                          this.genreNames.size());
+        this.movieIndex = new VideoIndex(this, this.movieIds);
+        this.showIndex = new VideoIndex(this, this.showIds);
+    }
+
+    /**
+     * reads a catalog written by {@link #write}. The counters hold the views and favorites
+     * of the input users
+     * @param in snapshot placed on the catalog
+     * @param versions versions of the counters, null in the serial mode
+     */
+    Catalog(final DatabaseSnapshot.Reader in, final MetricVersions versions) {
+        this.versions = versions;
+        this.titles = SymbolTable.read(in);
+        this.genreNames = SymbolTable.read(in);
+        int size = in.readInt();
+        this.columns = new VideoColumns(size, versions != null);
+        this.videos = new Video[size];
+        this.videoGenres = new int[size][];
+        for (int id = 0; id < size; id++) {
+            byte kind = in.readByte();
+            String title = this.titles.getName(id);
+            ArrayList<String> cast = in.readStrings();
+            ArrayList<String> names = in.readStrings();
+            this.videoGenres[id] = in.readInts();
+            int year = in.readInt();
+            if (kind == MOVIE) {
+                this.videos[id] = new Movie(this.columns, id, title, year, cast, names,
+                                            genreMask(this.videoGenres[id]), in.readInt());
+            } else {
+                int numberOfSeasons = in.readInt();
+                int[] seasonNumbers = in.readInts();
+                int[] durations = in.readInts();
+                ArrayList<ShowSeason> seasons = new ArrayList<>(seasonNumbers.length);
+                for (int i = 0; i < seasonNumbers.length; i++) {
+                    seasons.add(new ShowSeason(seasonNumbers[i], durations[i]));
+                }
+                this.videos[id] = new Show(this.columns, id, title, year, cast, names,
+                                           genreMask(this.videoGenres[id]), numberOfSeasons,
+                                           seasons);
+            }
+            int views = in.readInt();
+            this.columns.setCounters(id, views, in.readInt());
+        }
+        this.movieIds = in.readInts();
+        this.showIds = in.readInts();
+        this.genreTieOrder = in.readInts();
+
+        this.genreRanking = new GenreRanking(this.genreTieOrder);
+        this.bestRated = new Leaderboard<>(Video.BEST_RATED_ORDER, video -> true);
+        this.mostFavorite = new Leaderboard<>(Video.MOST_FAVORITE_ORDER,
+                                              video -> video.getNumFavorites() != 0);
+        this.ratingByGenre = new ArrayList<>();
+        for (int genre = 0; genre < this.genreNames.size(); genre++) {
+            this.ratingByGenre.add(new Leaderboard<>(Comparator.<Video>naturalOrder(),
+                                                     video -> true));
+        }
+        this.latestRankings = new SnapshotRankings.Latest(this.videos.length,
+                                                          this.genreNames.size());
+        this.movieIndex = new VideoIndex(in, this.columns);
+        this.showIndex = new VideoIndex(in, this.columns);
+    }
+
+    /**
+     * writes the id tables, the videos with their counters, the id lists and the indexes of
+     * the groups
+     * @param out snapshot being written
+     * @throws IOException in case of exceptions to writing
+     */
+    void write(final DatabaseSnapshot.Writer out) throws IOException {
+        this.titles.write(out);
+        this.genreNames.write(out);
+        out.writeInt(this.videos.length);
+        for (Video video : this.videos) {
+            out.writeByte(video instanceof Movie ? MOVIE : SHOW);
+            out.writeStrings(video.getCast());
+            out.writeStrings(video.getGenreNames());
+            out.writeInts(this.videoGenres[video.getId()]);
+            out.writeInt(video.getYear());
+            if (video instanceof Movie) {
+                out.writeInt(((Movie) video).getDuration());
+            } else {
+                Show show = (Show) video;
+                out.writeInt(show.getNumberSeason());
+                out.writeInts(show.getSeasons().stream()
+                                      .mapToInt(ShowSeason::getCurrentSeason).toArray());
+                out.writeInts(show.getSeasons().stream()
+                                      .mapToInt(ShowSeason::getDuration).toArray());
+            }
+            out.writeInt(video.getNumViews());
+            out.writeInt(video.getNumFavorites());
+        }
+        out.writeInts(this.movieIds);
+        out.writeInts(this.showIds);
+        out.writeInts(this.genreTieOrder);
+        this.movieIndex.write(out);
+        this.showIndex.write(out);
+    }
+
+    /**
+     * puts an element on its video id position
+     * @param list list indexed by video id
+     * @param id id of the video
+     * @param element element to be added
+     * @param <T> type of the elements
+     */
+    private static <T> void putVideo(final ArrayList<T> list, final int id,
+                                     final T element) {
+        if (id == list.size()) {
+            list.add(element);
+        } else {
+            list.set(id, element);
+        }
+    }
+
+    /**
+     * gives an id to every genre name of a video
+     * @param names genre names, as given in the input
+     * @return genre ids, in input order
+     */
+    private int[] encodeGenres(final List<String> names) {
+        if (names == null) {
+            return new int[0];
+        }
+        return names.stream().filter(name -> name != null)
+                .mapToInt(this.genreNames::intern).toArray();
+    }
+
+    /**
+     * @param genres genre ids
+     * @return genre bitmask
+     */
+    private static long genreMask(final int[] genres) {
+        long mask = 0;
+        for (int genre : genres) {
+            mask |= Utils.genreBit(genre);
+        }
+        return mask;
+    }
+
+    /**
+     * maps a genre name to its id. Names are compared exactly, so a name that is written
+     * differently from the catalog ones matches no video
+     * @param name genre name
+     * @return the genre id or MISSING if no catalog video has this genre
+     */
+    public int genreOf(final String name) {
+        return name == null ? SymbolTable.MISSING : this.genreNames.lookup(name);
+    }
+
+    /**
+     * checks if a catalog video has a genre
+     * @param videoId video id
+     * @param genre genre id
+     * @return truth value
+     */
+    public boolean hasGenre(final int videoId, final int genre) {
+        if (genre < Utils.SHARED_GENRE_BIT) {
+            return this.columns.hasAllGenres(videoId, Utils.genreBit(genre));
+        }
+        for (int videoGenre : this.videoGenres[videoId]) {
+            if (videoGenre == genre) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * checks if a catalog video has all the given genres
+     * @param videoId video id
+     * @param genres genre ids
+     * @return truth value
+     */
+    public boolean hasAllGenres(final int videoId, final int[] genres) {
+        for (int genre : genres) {
+            if (!hasGenre(videoId, genre)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of genres of the catalog
+     */
+    @Override
+    public int getNumGenres() {
+        return this.genreNames.size();
+    }
+
+    /**
+     * @param genre genre id
+     * @return name of the genre
+     */
+    public String getGenreName(final int genre) {
+        return this.genreNames.getName(genre);
+    }
+
+    /**
+     * @param videoId id of a catalog video
+     * @return genre ids of the video, as listed in the input
+     */
+    public int[] getGenresOf(final int videoId) {
+        return this.videoGenres[videoId];
+    }
+
+    /**
+     * Popular genres with the same number of views are listed in the order in which a hash
+     * map keyed by genre name, filled while walking a hash map keyed by title, returns them.
+     * The order only depends on the catalog, so it is computed once.
+     * @param moviesData input movies
+     * @param showsData input shows
+     * @return genre ids in tie order
+     */
+    private int[] computeGenreTieOrder(final List<MovieInputData> moviesData,
+                                       final List<SerialInputData> showsData) {
+        HashMap<String, ShowInput> byTitle = new HashMap<>();
+        if (moviesData != null) {
+            for (MovieInputData movieData : moviesData) {
+                byTitle.put(movieData.getTitle(), movieData);
+            }
+        }
+        if (showsData != null) {
+            for (SerialInputData showData : showsData) {
+                byTitle.put(showData.getTitle(), showData);
+            }
+        }
+
+        HashMap<String, Integer> byName = new HashMap<>();
+        for (ShowInput videoData : byTitle.values()) {
+            if (videoData.getGenres() != null) {
+                for (String name : videoData.getGenres()) {
+                    if (name != null) {
+                        byName.putIfAbsent(name, genreOf(name));
+                    }
+                }
+            }
+        }
+
+        // genres of videos whose title is taken by a later video come last, by id
+        LinkedHashSet<Integer> order = new LinkedHashSet<>(byName.values());
+        for (int genre = 0; genre < this.genreNames.size(); genre++) {
+            order.add(genre);
+        }
+        return order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * puts every video on the leaderboards of its group and on the catalog leaderboards,
+     * and counts the views of every genre.
+     * Called once the view and favorite counters of the input were added. The concurrent
+     * mode reads versions of the metrics instead, so it keeps no leaderboards
+     */
+    public void buildRankings() {
+        if (this.versions != null) {
+            return;
+        }
+        this.movieIndex.buildRankings(this);
+        this.showIndex.buildRankings(this);
+        for (Video video : this.videos) {
+            this.bestRated.add(video);
+            this.mostFavorite.add(video);
+            for (int genre : this.videoGenres[video.getId()]) {
+                this.ratingByGenre.get(genre).add(video);
+            }
+            if (video.getNumViews() != 0) {
+                this.genreRanking.addViews(this.videoGenres[video.getId()],
+                                           video.getNumViews());
+            }
+        }
+    }
+
+    /**
+     * @param video a catalog video
+     * @return index of the group of the video
+     */
+    private VideoIndex indexOf(final Video video) {
+        return video instanceof Movie ? this.movieIndex : this.showIndex;
+    }
+
+    /**
+     * adds views to a video. In the serial mode the video is moved on the views leaderboard
+     * and its genres on the genre ranking, in the concurrent mode it is marked as changed
+     * @param video viewed video
+     * @param views number of views
+     */
+    public void addViews(final Video video, final int views) {
+        if (this.versions != null) {
+            video.addNumViews(views);
+            this.versions.videoChanged(video.getId());
+            return;
+        }
+        Leaderboard<Video> leaderboard = indexOf(video).getViewsRanking();
+        leaderboard.remove(video);
+        video.addNumViews(views);
+        leaderboard.add(video);
+        this.genreRanking.addViews(this.videoGenres[video.getId()], views);
+    }
+
+    /**
+     * adds a favorite to a video. In the serial mode the video is moved on the favorites
+     * leaderboards, in the concurrent mode it is marked as changed
+     * @param video video added to favorite
+     */
+    public void addFavorite(final Video video) {
+        if (this.versions != null) {
+            video.incrementNumFavorites();
+            this.versions.videoChanged(video.getId());
+            return;
+        }
+        Leaderboard<Video> leaderboard = indexOf(video).getFavoritesRanking();
+        leaderboard.remove(video);
+        this.mostFavorite.remove(video);
+        video.incrementNumFavorites();
+        leaderboard.add(video);
+        this.mostFavorite.add(video);
+    }
+
+    /**
+     * adds a rating to a video. In the serial mode the video is moved on the rating
+     * leaderboards, in the concurrent mode it is marked as changed, and the caller holds the
+     * lock of the video
+     * @param video rated video
+     * @param grade rating given
+     * @param season season rated, 0 for movies
+     */
+    public void addRating(final Video video, final double grade, final int season) {
+        if (this.versions != null) {
+            video.addRating(grade, season);
+            this.versions.videoChanged(video.getId());
+            return;
+        }
+        Leaderboard<Video> leaderboard = indexOf(video).getRatingRanking();
+        leaderboard.remove(video);
+        this.bestRated.remove(video);
+        for (int genre : this.videoGenres[video.getId()]) {
+            this.ratingByGenre.get(genre).remove(video);
+        }
+        video.addRating(grade, season);
+        leaderboard.add(video);
+        this.bestRated.add(video);
+        for (int genre : this.videoGenres[video.getId()]) {
+            this.ratingByGenre.get(genre).add(video);
+        }
+    }
+
+    /**
+     * @return number of videos in the catalog
+     */
+    public int size() {
+        return this.videos.length;
+    }
+
+    /**
+     * @param id video id
+     * @return the video with this id, null if the id does not belong to a catalog video
+     */
+    public Video getVideo(final int id) {
+        if (id < 0 || id >= this.videos.length) {
+            return null;
+        }
+        return this.videos[id];
+    }
+
+    public VideoColumns getColumns() {
+        return columns;
+    }
+
+    public SymbolTable getTitles() {
+        return titles;
+    }
+
+    public int[] getMovieIds() {
+        return movieIds;
+    }
+
+    public int[] getShowIds() {
+        return showIds;
+    }
+
+    public VideoIndex getMovieIndex() {
+        return movieIndex;
+    }
+
+    public VideoIndex getShowIndex() {
+        return showIndex;
+    }
+
+    public int[] getGenreTieOrder() {
+        return genreTieOrder;
+    }
+
+    SnapshotRankings.Latest getLatestRankings() {
+        return latestRankings;
+    }
+
+    public GenreRanking getGenreRanking() {
+        return genreRanking;
+    }
+
+    @Override
+    public Iterator<Video> iterateBestRated() {
+        return this.bestRated.iterator(true);
+    }
+
+    @Override
+    public Iterator<Video> iterateMostFavorite() {
+        return this.mostFavorite.iterator(true);
+    }
+
+    @Override
+    public Iterator<Video> iterateByRating(final int genre) {
+        return this.ratingByGenre.get(genre).iterator(true);
+    }
+
+    @Override
+    public int getPopularGenre(final int rank) {
+        return this.genreRanking.get(rank);
+    }
+
+    public Leaderboard<Video> getBestRated() {
+        return bestRated;
+    }
+
+    public Leaderboard<Video> getMostFavorite() {
+        return mostFavorite;
+    }
+
+    /**
+     * @param genre genre id
+     * @return catalog videos of the genre sorted by rating, then by title
+     */
+    public Leaderboard<Video> getRatingByGenre(final int genre) {
+        return this.ratingByGenre.get(genre);
+    }
+}
@@ -0,0 +1,400 @@
+package database;
+
+import common.Constants;
+import fileio.ActionInputData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of the user commands run by a {@link Repository}.
+ * <p>
+ * Layout: header (magic, version, fingerprint of the input database the log was written
+ * for), then one record per command: payload length, CRC32 of the payload, then the payload
+ * (command type, action id, username, title, grade, season).
+ * Records are encoded in a buffer and written through a file channel by groups, with one
+ * write and, depending on the {@link SyncPolicy}, one sync per group, so durability does not
+ * cost one sync per command. A group is committed when it holds the configured number of
+ * records, when it no longer fits in the buffer, or when {@link #commit} is called.
+ * <p>
+ * On startup the log is replayed: a log written for another input database is refused, then
+ * records are read in order up to the first one that is incomplete or does not match its
+ * checksum, which is what a crash in the middle of a write leaves behind, and the file is cut
+ * there before new records are appended.
+ * All the methods are synchronized, so the log can be shared by many threads.
+ */
+public final class CommandLog implements Closeable {
+    private static final int MAGIC = 0x56444257;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    /**
+     * payload length and checksum
+     */
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * length written for a missing string
+     */
+    private static final int NULL_LENGTH = -1;
+    private static final byte VIEW = 0;
+    private static final byte FAVORITE = 1;
+    private static final byte RATING = 2;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final int groupSize;
+    private final CRC32 checksum;
+    /**
+     * records of the current group, not written yet
+     */
+    private ByteBuffer group;
+    private int groupRecords;
+    /**
+     * fingerprint of the input database read from the header, null for a new log
+     */
+    private Long fingerprint;
+    private boolean replayed;
+    private long appended;
+    private long committed;
+    private long syncs;
+
+    /**
+     * opens a log, creating it if it does not exist. It must be replayed before new records
+     * are appended
+     * @param path log file
+     * @param policy when records are forced to the device
+     * @param groupSize maximum number of records committed together
+     * @throws IOException if the file cannot be opened or is not a command log
+     */
+    public CommandLog(final Path path, final SyncPolicy policy,
+                      final int groupSize) throws IOException {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("the group size must be positive");
+        }
+        this.path = path;
+        this.policy = policy;
+        this.groupSize = policy == SyncPolicy.EVERY_COMMAND ? 1 : groupSize;
+        this.checksum = new CRC32();
+        this.group = ByteBuffer.allocate(BUFFER_SIZE);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        try {
+            // a header cut by a crash is written again by the replay, like a new one
+            if (this.channel.size() >= HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC) {
+                    throw new IOException(path + " is not a command log");
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("unsupported command log version " + version);
+                }
+                this.fingerprint = header.getLong();
+            }
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * reads every valid record, in order, and cuts the file after the last one. A new log is
+     * bound to the input database here
+     * @param inputFingerprint fingerprint of the input database the log is replayed on
+     * @param consumer receiver of the logged commands
+     * @return number of records read
+     * @throws IOException in case of exceptions to reading, or if the log was written for
+     * another input database
+     */
+    public synchronized long replay(final long inputFingerprint,
+                                    final Consumer<ActionInputData> consumer)
+            throws IOException {
+        if (this.fingerprint == null) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(inputFingerprint).flip();
+            this.channel.truncate(0);
+            writeFully(header, 0);
+            this.channel.force(true);
+            this.fingerprint = inputFingerprint;
+        } else if (this.fingerprint != inputFingerprint) {
+            throw new IOException(this.path + " was written for another input database");
+        }
+
+        long size = this.channel.size();
+        long position = HEADER_SIZE;
+        long count = 0;
+        ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        ByteBuffer payload = ByteBuffer.allocate(BUFFER_SIZE);
+
+        while (position + RECORD_HEADER_SIZE <= size) {
+            recordHeader.clear();
+            readFully(recordHeader, position);
+            recordHeader.flip();
+            int length = recordHeader.getInt();
+            int expected = recordHeader.getInt();
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(length);
+            }
+            payload.clear().limit(length);
+            readFully(payload, position + RECORD_HEADER_SIZE);
+            payload.flip();
+            this.checksum.reset();
+            this.checksum.update(payload.duplicate());
+            if ((int) this.checksum.getValue() != expected) {
+                break;
+            }
+
+            consumer.accept(decode(payload));
+            position += RECORD_HEADER_SIZE + length;
+            count++;
+        }
+
+        if (position < size) {
+            this.channel.truncate(position);
+            this.channel.force(true);
+        }
+        this.channel.position(position);
+        this.replayed = true;
+        this.appended = count;
+        this.committed = count;
+        return count;
+    }
+
+    /**
+     * adds a command to the current group, committing the group if it is full
+     * @param command command to be logged
+     * @throws IOException in case of exceptions to writing
+     */
+    public synchronized void append(final ActionInputData command) throws IOException {
+        if (!this.replayed) {
+            throw new IllegalStateException("the log must be replayed before appending");
+        }
+        byte[] username = encode(command.getUsername());
+        byte[] title = encode(command.getTitle());
+        int length = Byte.BYTES + Integer.BYTES + Integer.BYTES + length(username)
+                + Integer.BYTES + length(title) + Double.BYTES + Integer.BYTES;
+
+        if (this.group.remaining() < RECORD_HEADER_SIZE + length) {
+            commit();
+            if (this.group.capacity() < RECORD_HEADER_SIZE + length) {
+                this.group = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+            }
+        }
+        int start = this.group.position();
+        this.group.putInt(length);
+        this.group.putInt(0);
+        this.group.put(typeCode(command.getType()));
+        this.group.putInt(command.getActionId());
+        putString(username);
+        putString(title);
+        this.group.putDouble(command.getGrade());
+        this.group.putInt(command.getSeasonNumber());
+
+        ByteBuffer written = this.group.duplicate();
+        written.position(start + RECORD_HEADER_SIZE).limit(this.group.position());
+        this.checksum.reset();
+        this.checksum.update(written);
+        this.group.putInt(start + Integer.BYTES, (int) this.checksum.getValue());
+
+        this.groupRecords++;
+        this.appended++;
+        if (this.groupRecords >= this.groupSize) {
+            commit();
+        }
+    }
+
+    /**
+     * writes the current group and forces it to the device, unless the policy is
+     * {@link SyncPolicy#NONE}
+     * @throws IOException in case of exceptions to writing
+     */
+    public synchronized void commit() throws IOException {
+        if (this.groupRecords == 0) {
+            return;
+        }
+        this.group.flip();
+        while (this.group.hasRemaining()) {
+            this.channel.write(this.group);
+        }
+        this.group.clear();
+        if (this.policy != SyncPolicy.NONE) {
+            this.channel.force(false);
+            this.syncs++;
+        }
+        this.groupRecords = 0;
+        this.committed = this.appended;
+    }
+
+    /**
+     * @return true if some records were appended but not committed yet
+     */
+    public synchronized boolean hasUncommitted() {
+        return this.groupRecords > 0;
+    }
+
+    /**
+     * @return number of records committed, replayed ones included
+     */
+    public synchronized long getCommitted() {
+        return this.committed;
+    }
+
+    /**
+     * @return number of syncs done since the log was opened
+     */
+    public synchronized long getSyncs() {
+        return this.syncs;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public SyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * commits the current group and closes the file
+     * @throws IOException in case of exceptions to writing
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * @param type command type
+     * @return code of the type in the log
+     */
+    private static byte typeCode(final String type) {
+        return switch (type) {
+            case Constants.VIEW -> VIEW;
+            case Constants.FAVORITE -> FAVORITE;
+            case Constants.RATING -> RATING;
+            default -> throw new IllegalArgumentException("unknown command type " + type);
+        };
+    }
+
+    /**
+     * @param code code of the type in the log
+     * @return command type
+     * @throws IOException if the code is unknown
+     */
+    private static String typeOf(final byte code) throws IOException {
+        return switch (code) {
+            case VIEW -> Constants.VIEW;
+            case FAVORITE -> Constants.FAVORITE;
+            case RATING -> Constants.RATING;
+            default -> throw new IOException("unknown command code " + code);
+        };
+    }
+
+    /**
+     * @param payload payload of a record
+     * @return the logged command
+     * @throws IOException if the record is malformed
+     */
+    private static ActionInputData decode(final ByteBuffer payload) throws IOException {
+        String type = typeOf(payload.get());
+        int actionId = payload.getInt();
+        String username = getString(payload);
+        String title = getString(payload);
+        double grade = payload.getDouble();
+        int season = payload.getInt();
+        return new ActionInputData(actionId, Constants.COMMAND, type, username, title, grade,
+                                   season);
+    }
+
+    /**
+     * @param string string to be encoded, may be null
+     * @return UTF-8 bytes, null for a null string
+     */
+    private static byte[] encode(final String string) {
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param bytes encoded string, may be null
+     * @return number of bytes of the string
+     */
+    private static int length(final byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    /**
+     * @param bytes encoded string, may be null
+     */
+    private void putString(final byte[] bytes) {
+        if (bytes == null) {
+            this.group.putInt(NULL_LENGTH);
+        } else {
+            this.group.putInt(bytes.length);
+            this.group.put(bytes);
+        }
+    }
+
+    /**
+     * @param payload payload placed on a string
+     * @return the string, null if it was missing
+     * @throws IOException if the length does not fit in the record
+     */
+    private static String getString(final ByteBuffer payload) throws IOException {
+        int length = payload.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0 || length > payload.remaining()) {
+            throw new IOException("malformed command record");
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param buffer bytes to be written
+     * @param position position in the file
+     * @throws IOException in case of exceptions to writing
+     */
+    private void writeFully(final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += this.channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * @param buffer buffer filled up to its limit
+     * @param position position in the file
+     * @throws IOException if the file ends before the buffer is full
+     */
+    private void readFully(final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = this.channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("unexpected end of the command log");
+            }
+            offset += read;
+        }
+    }
+}
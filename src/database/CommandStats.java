@@ -0,0 +1,66 @@
+package database;
+
+import common.Constants;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the commands applied by a repository.
+ * Every command thread updates these counters, so they are LongAdders: the increments of
+ * different threads go to different cells and never wait for each other. The totals are
+ * only summed when read.
+ */
+public final class CommandStats {
+    private static final String SUCCESS = "success";
+
+    private final LongAdder views = new LongAdder();
+    private final LongAdder favorites = new LongAdder();
+    private final LongAdder ratings = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * counts the result of a command
+     * @param type command type
+     * @param message result message of the command
+     */
+    void record(final String type, final String message) {
+        if (!message.startsWith(SUCCESS)) {
+            this.errors.increment();
+            return;
+        }
+        switch (type) {
+            case Constants.VIEW -> this.views.increment();
+            case Constants.FAVORITE -> this.favorites.increment();
+            case Constants.RATING -> this.ratings.increment();
+            default -> { }
+        }
+    }
+
+    /**
+     * @return number of successful view commands
+     */
+    public long getViews() {
+        return this.views.sum();
+    }
+
+    /**
+     * @return number of successful favorite commands
+     */
+    public long getFavorites() {
+        return this.favorites.sum();
+    }
+
+    /**
+     * @return number of successful rating commands
+     */
+    public long getRatings() {
+        return this.ratings.sum();
+    }
+
+    /**
+     * @return number of commands that returned an error
+     */
+    public long getErrors() {
+        return this.errors.sum();
+    }
+}
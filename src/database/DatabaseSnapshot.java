@@ -0,0 +1,402 @@
+package database;
+
+import fileio.Input;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of a {@link Repository} as it is right after being built from an input:
+ * the id tables of the titles, genres, users and actors, the videos with their view and
+ * favorite counters, the genre lists and tie order, the year and genre indexes, the actor
+ * index and the actors and users with their filmographies, histories and favorites encoded
+ * to video ids. Opening it gives the same repository without parsing the input, encoding
+ * any name, summing the counters or building any index again.
+ * <p>
+ * Layout: header (magic, version, fingerprint of the input database, sizes of the input
+ * lists, position of the string table), the sections written by {@link Catalog},
+ * {@link ActorIndex} and {@link Repository}, in this order, then the string table. Every
+ * string is stored once in the table and referenced by its index. The sections are streamed
+ * to the file as they are encoded, and the header is written last, so a file left behind by
+ * a failed write is never taken for a snapshot.
+ * <p>
+ * The file is memory mapped, and int arrays are read with bulk copies from the mapping,
+ * without decoding them value by value. A single mapping holds at most 2 GB, so bigger
+ * snapshots are refused, both when they are written and when they are opened.
+ */
+public final class DatabaseSnapshot {
+    static final int MAGIC = 0x56444253;
+    static final int VERSION = 3;
+    /**
+     * marks a missing string or list
+     */
+    static final int NULL_REF = -1;
+    /**
+     * magic, version, fingerprint, the three list sizes and the position of the string table
+     */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES + 3 * Integer.BYTES
+                                           + Long.BYTES;
+    /**
+     * biggest file a single memory mapping can hold
+     */
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private final String path;
+    private final MappedByteBuffer buffer;
+    private final long fingerprint;
+    private final int numVideos;
+    private final int numUsers;
+    private final int numActors;
+    private final String[] strings;
+
+    /**
+     * maps a snapshot and reads its header and string table
+     * @param path snapshot file
+     * @throws IOException in case of exceptions to reading, if the file is not a snapshot or
+     * if it is too big to be mapped
+     */
+    public DatabaseSnapshot(final String path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAX_SIZE) {
+                throw new IOException(path + " has " + size + " bytes, over the " + MAX_SIZE
+                                      + " bytes a snapshot can have to be memory mapped");
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (this.buffer.remaining() < HEADER_SIZE || this.buffer.getInt() != MAGIC) {
+            throw new IOException(path + " is not a database snapshot");
+        }
+        int version = this.buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported snapshot version " + version);
+        }
+        this.fingerprint = this.buffer.getLong();
+        this.numVideos = this.buffer.getInt();
+        this.numUsers = this.buffer.getInt();
+        this.numActors = this.buffer.getInt();
+        long stringsStart = this.buffer.getLong();
+        if (stringsStart < HEADER_SIZE || stringsStart > this.buffer.limit() - Integer.BYTES) {
+            throw new IOException(path + " is not a database snapshot");
+        }
+
+        ByteBuffer table = this.buffer.duplicate();
+        table.position((int) stringsStart);
+        this.strings = new String[table.getInt()];
+        for (int i = 0; i < this.strings.length; i++) {
+            byte[] bytes = new byte[table.getInt()];
+            table.get(bytes);
+            this.strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * builds the repository of the database of an input and writes it to a snapshot file
+     * @param input input data, the actions are ignored
+     * @param path snapshot file
+     * @throws IOException in case of exceptions to writing, or if the snapshot would be too
+     * big to be mapped
+     */
+    public static void write(final Input input, final String path) throws IOException {
+        Input database = new Input(input.getActors(), input.getUsers(), null,
+                                   input.getMovies(), input.getSerials());
+        Repository repository = new Repository(database, null);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            // the header is written once the position of the string table is known
+            channel.position(HEADER_SIZE);
+            Writer body = new Writer(channel);
+            repository.write(body);
+            long stringsStart = body.finish();
+            if (channel.size() > MAX_SIZE) {
+                throw new IOException(path + " would have " + channel.size() + " bytes, over the "
+                                      + MAX_SIZE
+                                      + " bytes a snapshot can have to be memory mapped");
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(InputFingerprint.of(input));
+            header.putInt(sizeOf(input.getMovies()) + sizeOf(input.getSerials()));
+            header.putInt(sizeOf(input.getUsers()));
+            header.putInt(sizeOf(input.getActors()));
+            header.putLong(stringsStart);
+            header.flip();
+            long offset = 0;
+            while (header.hasRemaining()) {
+                offset += channel.write(header, offset);
+            }
+        }
+    }
+
+    /**
+     * @param list input list, may be null
+     * @return number of elements
+     */
+    private static int sizeOf(final List<?> list) {
+        return list == null ? 0 : list.size();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return fingerprint of the input database the snapshot was written from, see
+     * {@link InputFingerprint}
+     */
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return number of movies and shows of the input, repeated titles included
+     */
+    int getNumVideos() {
+        return numVideos;
+    }
+
+    /**
+     * @return number of users of the input, repeated usernames included
+     */
+    int getNumUsers() {
+        return numUsers;
+    }
+
+    /**
+     * @return number of actors of the input, repeated names included
+     */
+    int getNumActors() {
+        return numActors;
+    }
+
+    /**
+     * default query limit of the actions run against the snapshot, the same as for the
+     * input it was written from
+     * @return the biggest of the input list sizes
+     */
+    public int getDefaultNumber() {
+        return Math.max(Math.max(this.numVideos, this.numUsers), this.numActors);
+    }
+
+    /**
+     * @return a reader placed on the first section, so the snapshot can be opened many times
+     */
+    Reader reader() {
+        ByteBuffer body = this.buffer.duplicate();
+        body.position(HEADER_SIZE);
+        return new Reader(body, this.strings);
+    }
+
+    /**
+     * Reads the sections of a snapshot in the order they were written
+     */
+    static final class Reader {
+        private final ByteBuffer buffer;
+        private final String[] strings;
+
+        private Reader(final ByteBuffer buffer, final String[] strings) {
+            this.buffer = buffer;
+            this.strings = strings;
+        }
+
+        /**
+         * @return next int
+         */
+        int readInt() {
+            return this.buffer.getInt();
+        }
+
+        /**
+         * @return next byte
+         */
+        byte readByte() {
+            return this.buffer.get();
+        }
+
+        /**
+         * @return next string, null if it was missing
+         */
+        String readString() {
+            int index = this.buffer.getInt();
+            return index == NULL_REF ? null : this.strings[index];
+        }
+
+        /**
+         * @return next list of strings, null if it was missing
+         */
+        ArrayList<String> readStrings() {
+            int size = this.buffer.getInt();
+            if (size == NULL_REF) {
+                return null;
+            }
+            ArrayList<String> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readString());
+            }
+            return list;
+        }
+
+        /**
+         * @return next int array, copied from the mapping in one go
+         */
+        int[] readInts() {
+            int[] values = new int[this.buffer.getInt()];
+            this.buffer.asIntBuffer().get(values);
+            this.buffer.position(this.buffer.position() + values.length * Integer.BYTES);
+            return values;
+        }
+    }
+
+    /**
+     * Encodes the sections of a snapshot into a buffer flushed to the file whenever it is
+     * full, collecting their strings in the string table
+     */
+    static final class Writer {
+        private static final int BUFFER_SIZE = 1 << 16;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+        /**
+         * @param channel file the sections are written to, from its current position
+         */
+        Writer(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * makes room in the buffer, writing its content to the file if needed
+         * @param bytes number of bytes about to be put, at most the size of the buffer
+         * @throws IOException in case of exceptions to writing
+         */
+        private void reserve(final int bytes) throws IOException {
+            if (this.buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * writes the content of the buffer to the file
+         * @throws IOException in case of exceptions to writing
+         */
+        private void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.buffer.clear();
+        }
+
+        /**
+         * @param value int to be written
+         * @throws IOException in case of exceptions to writing
+         */
+        void writeInt(final int value) throws IOException {
+            reserve(Integer.BYTES);
+            this.buffer.putInt(value);
+        }
+
+        /**
+         * @param value byte to be written
+         * @throws IOException in case of exceptions to writing
+         */
+        void writeByte(final int value) throws IOException {
+            reserve(Byte.BYTES);
+            this.buffer.put((byte) value);
+        }
+
+        /**
+         * @param string string to be written, may be null
+         * @throws IOException in case of exceptions to writing
+         */
+        void writeString(final String string) throws IOException {
+            if (string == null) {
+                writeInt(NULL_REF);
+                return;
+            }
+            Integer index = this.strings.get(string);
+            if (index == null) {
+                index = this.strings.size();
+                this.strings.put(string, index);
+            }
+            writeInt(index);
+        }
+
+        /**
+         * @param list strings to be written, may be null
+         * @throws IOException in case of exceptions to writing
+         */
+        void writeStrings(final List<String> list) throws IOException {
+            if (list == null) {
+                writeInt(NULL_REF);
+                return;
+            }
+            writeInt(list.size());
+            for (String string : list) {
+                writeString(string);
+            }
+        }
+
+        /**
+         * @param values ints to be written, copied to the buffer in as few bulk puts as it takes
+         * @throws IOException in case of exceptions to writing
+         */
+        void writeInts(final int[] values) throws IOException {
+            writeInt(values.length);
+            int done = 0;
+            while (done < values.length) {
+                reserve(Integer.BYTES);
+                int count = Math.min(values.length - done, this.buffer.remaining() / Integer.BYTES);
+                this.buffer.asIntBuffer().put(values, done, count);
+                this.buffer.position(this.buffer.position() + count * Integer.BYTES);
+                done += count;
+            }
+        }
+
+        /**
+         * @param bytes raw bytes to be written
+         * @throws IOException in case of exceptions to writing
+         */
+        private void writeBytes(final byte[] bytes) throws IOException {
+            int done = 0;
+            while (done < bytes.length) {
+                reserve(Byte.BYTES);
+                int count = Math.min(bytes.length - done, this.buffer.remaining());
+                this.buffer.put(bytes, done, count);
+                done += count;
+            }
+        }
+
+        /**
+         * writes the string table after the sections and flushes the buffer
+         * @return position of the string table in the file
+         * @throws IOException in case of exceptions to writing
+         */
+        long finish() throws IOException {
+            long stringsStart = this.channel.position() + this.buffer.position();
+            writeInt(this.strings.size());
+            for (String string : this.strings.keySet()) {
+                byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+                writeInt(bytes.length);
+                writeBytes(bytes);
+            }
+            flush();
+            return stringsStart;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package database;
+
+import models.video.PopularGenre;
+
+/**
+ * Genres of the catalog ordered by number of views, most viewed first.
+ * Genres with the same number of views keep the catalog tie order. The view counters are
+ * updated together with the videos, and a genre only moves when its count crosses the count
+ * of a neighbour, so the ranking is never sorted again.
+ */
+public final class GenreRanking {
+    /**
+     * genres of the catalog, in ranking order
+     */
+    private final PopularGenre[] ranking;
+    /**
+     * position of a genre in the ranking, by genre id
+     */
+    private final int[] position;
+    /**
+     * position of a genre in the tie order, by genre id
+     */
+    private final int[] tieRank;
+
+    /**
+     * @param tieOrder ids of every genre of the catalog, in tie order
+     */
+    GenreRanking(final int[] tieOrder) {
+        this.ranking = new PopularGenre[tieOrder.length];
+        this.position = new int[tieOrder.length];
+        this.tieRank = new int[tieOrder.length];
+        for (int i = 0; i < tieOrder.length; i++) {
+            this.ranking[i] = new PopularGenre(tieOrder[i], 0);
+            this.position[tieOrder[i]] = i;
+            this.tieRank[tieOrder[i]] = i;
+        }
+    }
+
+    /**
+     * @return number of ranked genres
+     */
+    public int size() {
+        return this.ranking.length;
+    }
+
+    /**
+     * @param rank position in the ranking
+     * @return id of the genre on that position
+     */
+    public int get(final int rank) {
+        return this.ranking[rank].getGenre();
+    }
+
+    /**
+     * adds the views of a video to all its genres and moves them in the ranking.
+     * A genre listed twice by the video counts the views twice
+     * @param genres genre ids of the viewed video, as listed in the input
+     * @param views number of views
+     */
+    void addViews(final int[] genres, final int views) {
+        for (int genre : genres) {
+            int pos = this.position[genre];
+            this.ranking[pos].addViews(views);
+            moveGenre(pos);
+        }
+    }
+
+    /**
+     * moves a genre whose count changed until its neighbours are in order again
+     * @param pos current position of the genre
+     */
+    private void moveGenre(final int pos) {
+        int current = pos;
+        while (current > 0 && before(this.ranking[current], this.ranking[current - 1])) {
+            swap(current, current - 1);
+            current--;
+        }
+        while (current < this.ranking.length - 1
+               && before(this.ranking[current + 1], this.ranking[current])) {
+            swap(current, current + 1);
+            current++;
+        }
+    }
+
+    /**
+     * @param genre1 first genre
+     * @param genre2 second genre
+     * @return true if the first genre is ranked before the second one
+     */
+    private boolean before(final PopularGenre genre1, final PopularGenre genre2) {
+        int compare = genre1.compareTo(genre2);
+        if (compare == 0) {
+            return this.tieRank[genre1.getGenre()] < this.tieRank[genre2.getGenre()];
+        }
+        return compare > 0;
+    }
+
+    /**
+     * swaps two genres of the ranking
+     * @param pos1 first position
+     * @param pos2 second position
+     */
+    private void swap(final int pos1, final int pos2) {
+        PopularGenre genre = this.ranking[pos1];
+        this.ranking[pos1] = this.ranking[pos2];
+        this.ranking[pos2] = genre;
+        this.position[this.ranking[pos1].getGenre()] = pos1;
+        this.position[this.ranking[pos2].getGenre()] = pos2;
+    }
+}
@@ -0,0 +1,163 @@
+package database;
+
+import actor.ActorsAwards;
+import entertainment.Season;
+import fileio.ActorInputData;
+import fileio.Input;
+import fileio.ShowInput;
+import fileio.UserInputData;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Fingerprint of the database section of an input: movies, shows, users and actors.
+ * It is kept in the header of a {@link CommandLog}, so a log is only read on top of the
+ * database it was written for.
+ * Values are folded in input order, FNV-1a style. Maps are folded entry by entry and the
+ * entry fingerprints added, so the iteration order of a map does not matter.
+ */
+final class InputFingerprint {
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    /**
+     * value folded for a missing string or list
+     */
+    private static final long MISSING = -1;
+
+    private long hash;
+
+    private InputFingerprint() {
+        this.hash = OFFSET_BASIS;
+    }
+
+    /**
+     * @param input input data
+     * @return fingerprint of the database section of the input
+     */
+    static long of(final Input input) {
+        InputFingerprint fingerprint = new InputFingerprint();
+        fingerprint.addList(input.getMovies(), movie -> {
+            fingerprint.addShow(movie);
+            fingerprint.add(movie.getDuration());
+        });
+        fingerprint.addList(input.getSerials(), show -> {
+            fingerprint.addShow(show);
+            fingerprint.add(show.getNumberSeason());
+            fingerprint.addList(show.getSeasons(), fingerprint::addSeason);
+        });
+        fingerprint.addList(input.getUsers(), fingerprint::addUser);
+        fingerprint.addList(input.getActors(), fingerprint::addActor);
+        return fingerprint.hash;
+    }
+
+    /**
+     * @param value value to be folded
+     */
+    private void add(final long value) {
+        this.hash = (this.hash ^ value) * PRIME;
+    }
+
+    /**
+     * @param value string to be folded, may be null
+     */
+    private void add(final String value) {
+        if (value == null) {
+            add(MISSING);
+            return;
+        }
+        add(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            add(value.charAt(i));
+        }
+    }
+
+    /**
+     * folds the size of a list, then every element
+     * @param list list to be folded, may be null
+     * @param element folds one element
+     * @param <T> type of the elements
+     */
+    private <T> void addList(final List<T> list, final Consumer<T> element) {
+        if (list == null) {
+            add(MISSING);
+            return;
+        }
+        add(list.size());
+        list.forEach(element);
+    }
+
+    /**
+     * folds the size of a map, then the sum of the fingerprints of its entries
+     * @param map map to be folded, may be null
+     * @param <K> type of the keys
+     * @param <V> type of the values
+     */
+    private <K, V> void addMap(final Map<K, V> map) {
+        if (map == null) {
+            add(MISSING);
+            return;
+        }
+        long sum = 0;
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            InputFingerprint entryFingerprint = new InputFingerprint();
+            entryFingerprint.addKey(entry.getKey());
+            entryFingerprint.add(entry.getValue() == null ? MISSING
+                    : ((Number) entry.getValue()).longValue());
+            sum += entryFingerprint.hash;
+        }
+        add(map.size());
+        add(sum);
+    }
+
+    /**
+     * @param key map key, a title or an award
+     */
+    private void addKey(final Object key) {
+        if (key instanceof ActorsAwards) {
+            add(((ActorsAwards) key).ordinal());
+        } else {
+            add((String) key);
+        }
+    }
+
+    /**
+     * @param show movie or show
+     */
+    private void addShow(final ShowInput show) {
+        add(show.getTitle());
+        add(show.getYear());
+        addList(show.getCast(), this::add);
+        addList(show.getGenres(), this::add);
+    }
+
+    /**
+     * @param season season of a show
+     */
+    private void addSeason(final Season season) {
+        add(season.getCurrentSeason());
+        add(season.getDuration());
+        addList(season.getRatings(), rating -> add(Double.doubleToLongBits(rating)));
+    }
+
+    /**
+     * @param user input user
+     */
+    private void addUser(final UserInputData user) {
+        add(user.getUsername());
+        add(user.getSubscriptionType());
+        addMap(user.getHistory());
+        addList(user.getFavoriteMovies(), this::add);
+    }
+
+    /**
+     * @param actor input actor
+     */
+    private void addActor(final ActorInputData actor) {
+        add(actor.getName());
+        add(actor.getCareerDescription());
+        addList(actor.getFilmography(), this::add);
+        addMap(actor.getAwards());
+    }
+}
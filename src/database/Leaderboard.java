@@ -0,0 +1,86 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Videos or users kept sorted by one metric (views, favorites, ratings...), then by name or
+ * position. Only the elements meeting a condition are ranked, like the non zero metrics in
+ * the queries.
+ * The tree is ordered by the current metric of the elements, so an element must be removed
+ * before its metric changes and added back after: both are O(log n). Reading the first
+ * N elements in either direction costs O(N + log n).
+ * @param <T> type of the ranked elements
+ */
+public final class Leaderboard<T> {
+    private final TreeSet<T> ranking;
+    private final Predicate<T> ranked;
+
+    /**
+     * @param order order of the elements
+     * @param ranked condition an element must meet to be on the leaderboard
+     */
+    public Leaderboard(final Comparator<T> order, final Predicate<T> ranked) {
+        this.ranking = new TreeSet<>(order);
+        this.ranked = ranked;
+    }
+
+    /**
+     * adds an element, if it meets the condition
+     * @param element element to be added
+     */
+    public void add(final T element) {
+        if (this.ranked.test(element)) {
+            this.ranking.add(element);
+        }
+    }
+
+    /**
+     * removes an element
+     * @param element element to be removed
+     */
+    public void remove(final T element) {
+        this.ranking.remove(element);
+    }
+
+    /**
+     * @return true if no element is ranked
+     */
+    public boolean isEmpty() {
+        return this.ranking.isEmpty();
+    }
+
+    /**
+     * @return number of ranked elements
+     */
+    public int size() {
+        return this.ranking.size();
+    }
+
+    /**
+     * walks the leaderboard in order, without copying it
+     * @param ascending true for the lowest metrics first, false for the highest
+     * @return iterator over the ranked elements
+     */
+    public Iterator<T> iterator(final boolean ascending) {
+        return ascending ? this.ranking.iterator() : this.ranking.descendingIterator();
+    }
+
+    /**
+     * gets the first elements of the leaderboard
+     * @param number maximum number of elements
+     * @param ascending true for the lowest metrics first, false for the highest
+     * @return list of at most number elements
+     */
+    public ArrayList<T> top(final int number, final boolean ascending) {
+        ArrayList<T> list = new ArrayList<>();
+        Iterator<T> iterator = iterator(ascending);
+        while (iterator.hasNext() && list.size() < number) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+}
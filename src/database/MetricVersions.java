@@ -0,0 +1,392 @@
+package database;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Versions of the metrics read by the queries and the recommendations: the counters and the
+ * rating of every catalog video, the number of ratings of every user and the filmography mean
+ * of every actor.
+ * <p>
+ * The metrics are kept in columns split in chunks. A reader pins the latest version, which
+ * shares the chunks of the columns, and reads it without locks while commands go on.
+ * A change to a chunk while some version is pinned is written on a copy of the chunk,
+ * so pinned versions never change; with no version pinned, the chunk is changed in place.
+ * Old versions, and the chunks only they reference, are left to the garbage collector once
+ * their readers release them.
+ * <p>
+ * Commands do not write the columns: they only mark the videos and users they changed. The
+ * next reader records the marked metrics before it takes a new version, under the exclusive
+ * side of the gate of {@link AccessLocks}, while commands hold the shared side, so a version
+ * always holds whole commands. Readers find nothing to record as long as no command runs.
+ */
+public final class MetricVersions {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final AccessLocks locks;
+    private final Column numViews;
+    private final Column numFavorites;
+    private final Column numRatings;
+    private final Column rating;
+    private final Column userRatings;
+    private final Column actorMeans;
+    /**
+     * videos and users changed by commands since their metrics were recorded
+     */
+    private final ChangeSet changedVideos;
+    private final ChangeSet changedUsers;
+    /**
+     * whether some video or user is marked
+     */
+    private volatile boolean changed;
+    /**
+     * number of versions held by readers
+     */
+    private final AtomicInteger pinned;
+    /**
+     * number of changes recorded, guarded by this object
+     */
+    private long changes;
+    /**
+     * latest version taken, guarded by this object
+     */
+    private Snapshot latest;
+
+    /**
+     * @param locks locks of the shared state
+     * @param numVideos number of catalog videos
+     * @param numUsers number of users
+     * @param numActors number of actors
+     */
+    public MetricVersions(final AccessLocks locks, final int numVideos, final int numUsers,
+                          final int numActors) {
+        this.locks = locks;
+        this.numViews = new Column(numVideos);
+        this.numFavorites = new Column(numVideos);
+        this.numRatings = new Column(numVideos);
+        this.rating = new Column(numVideos);
+        this.userRatings = new Column(numUsers);
+        this.actorMeans = new Column(numActors);
+        this.changedVideos = new ChangeSet(numVideos);
+        this.changedUsers = new ChangeSet(numUsers);
+        this.pinned = new AtomicInteger();
+    }
+
+    /**
+     * marks a video whose counters or rating were changed by a command
+     * @param id video id
+     */
+    public void videoChanged(final int id) {
+        this.changedVideos.mark(id);
+        if (!this.changed) {
+            this.changed = true;
+        }
+    }
+
+    /**
+     * marks a user whose number of ratings was changed by a command
+     * @param id user id
+     */
+    public void userChanged(final int id) {
+        this.changedUsers.mark(id);
+        if (!this.changed) {
+            this.changed = true;
+        }
+    }
+
+    /**
+     * unmarks the changed videos. Called while recording the changes
+     * @param consumer called with the id of every changed video
+     */
+    public void drainChangedVideos(final IntConsumer consumer) {
+        this.changedVideos.drain(consumer);
+    }
+
+    /**
+     * unmarks the changed users. Called while recording the changes
+     * @param consumer called with the id of every changed user
+     */
+    public void drainChangedUsers(final IntConsumer consumer) {
+        this.changedUsers.drain(consumer);
+    }
+
+    /**
+     * records the counters and the rating of a video. Called while recording the changes,
+     * or before the repository is shared
+     * @param id video id
+     * @param columns live columns of the catalog
+     */
+    public void recordVideo(final int id, final VideoColumns columns) {
+        boolean copy = this.pinned.get() > 0;
+        this.numViews.set(id, columns.getNumViews(id), copy);
+        this.numFavorites.set(id, columns.getNumFavorites(id), copy);
+        this.numRatings.set(id, columns.getNumRatings(id), copy);
+        this.rating.set(id, Double.doubleToRawLongBits(columns.getRating(id)), copy);
+        this.changes++;
+    }
+
+    /**
+     * records the number of ratings of a user. Called while recording the changes, or before
+     * the repository is shared
+     * @param id user id
+     * @param ratings number of ratings
+     */
+    public void recordUser(final int id, final int ratings) {
+        this.userRatings.set(id, ratings, this.pinned.get() > 0);
+        this.changes++;
+    }
+
+    /**
+     * records the filmography mean of an actor. Called while recording the changes, or before
+     * the repository is shared
+     * @param id actor id
+     * @param mean filmography mean
+     */
+    public void recordActor(final int id, final double mean) {
+        this.actorMeans.set(id, Double.doubleToRawLongBits(mean), this.pinned.get() > 0);
+        this.changes++;
+    }
+
+    /**
+     * pins the latest version. If a command changed the metrics since the previous version,
+     * the changes are recorded first, once the running commands are done, and a new version
+     * is taken. Must be followed by {@link #release}
+     * @param recordChanges records the metrics of the marked videos and users, and of what
+     *                      depends on them, using {@link #drainChangedVideos},
+     *                      {@link #drainChangedUsers} and the record methods
+     * @return the pinned version
+     */
+    public Snapshot pin(final Runnable recordChanges) {
+        if (this.changed) {
+            this.locks.lockExclusive();
+            try {
+                synchronized (this) {
+                    if (this.changed) {
+                        this.changed = false;
+                        recordChanges.run();
+                    }
+                }
+            } finally {
+                this.locks.unlockExclusive();
+            }
+        }
+        synchronized (this) {
+            if (this.latest == null || this.latest.number != this.changes) {
+                this.latest = new Snapshot(this, this.changes, this.numViews.freeze(),
+                        this.numFavorites.freeze(), this.numRatings.freeze(),
+                        this.rating.freeze(), this.userRatings.freeze(),
+                        this.actorMeans.freeze());
+            }
+            // counted under this object, so changes recorded later see it and copy the chunks
+            this.pinned.incrementAndGet();
+            this.latest.readers.incrementAndGet();
+            return this.latest;
+        }
+    }
+
+    /**
+     * releases a version pinned by {@link #pin}
+     * @param snapshot pinned version
+     * @throws IllegalStateException if the version is not pinned on these metrics
+     */
+    public void release(final Snapshot snapshot) {
+        if (snapshot.owner != this
+            || snapshot.readers.getAndUpdate(readers -> readers > 0 ? readers - 1 : 0) == 0) {
+            throw new IllegalStateException("version " + snapshot.number + " is not pinned");
+        }
+        this.pinned.decrementAndGet();
+    }
+
+    /**
+     * @return number of versions held by readers
+     */
+    public int getPinned() {
+        return this.pinned.get();
+    }
+
+    /**
+     * set of ids marked by many threads at once
+     */
+    private static final class ChangeSet {
+        private final AtomicLongArray words;
+
+        ChangeSet(final int size) {
+            this.words = new AtomicLongArray((size + Long.SIZE - 1) / Long.SIZE);
+        }
+
+        /**
+         * @param id id to be marked
+         */
+        void mark(final int id) {
+            int word = id / Long.SIZE;
+            long bit = 1L << id;
+            // read first, so marking a marked id does not write to the shared word
+            if ((this.words.get(word) & bit) == 0) {
+                this.words.getAndAccumulate(word, bit, (bits, mark) -> bits | mark);
+            }
+        }
+
+        /**
+         * unmarks every id
+         * @param consumer called with every marked id, in increasing order
+         */
+        void drain(final IntConsumer consumer) {
+            for (int word = 0; word < this.words.length(); word++) {
+                if (this.words.get(word) == 0) {
+                    continue;
+                }
+                long bits = this.words.getAndSet(word, 0);
+                while (bits != 0) {
+                    consumer.accept(word * Long.SIZE + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * column of 64 bit values split in chunks
+     */
+    private static final class Column {
+        private final long[][] chunks;
+        /**
+         * whether a chunk may be referenced by a version, by chunk
+         */
+        private final boolean[] shared;
+
+        Column(final int size) {
+            this.chunks = new long[(size + CHUNK_MASK) >>> CHUNK_BITS][CHUNK_SIZE];
+            this.shared = new boolean[this.chunks.length];
+        }
+
+        /**
+         * @param id position of the value
+         * @param value new value
+         * @param copy whether a shared chunk is copied before it is changed
+         */
+        void set(final int id, final long value, final boolean copy) {
+            int chunk = id >>> CHUNK_BITS;
+            if (this.shared[chunk]) {
+                if (copy) {
+                    this.chunks[chunk] = this.chunks[chunk].clone();
+                }
+                this.shared[chunk] = false;
+            }
+            this.chunks[chunk][id & CHUNK_MASK] = value;
+        }
+
+        /**
+         * @return the chunks of the column, which are shared from now on
+         */
+        long[][] freeze() {
+            Arrays.fill(this.shared, true);
+            return this.chunks.clone();
+        }
+    }
+
+    /**
+     * A version of the metrics. It never changes once taken
+     */
+    public static final class Snapshot implements VideoMetrics {
+        private final MetricVersions owner;
+        private final long number;
+        private final long[][] numViews;
+        private final long[][] numFavorites;
+        private final long[][] numRatings;
+        private final long[][] rating;
+        private final long[][] userRatings;
+        private final long[][] actorMeans;
+        /**
+         * number of pins of this version not released yet
+         */
+        private final AtomicInteger readers;
+        /**
+         * orderings of the catalog read from this version, made by the first recommendation
+         */
+        private SnapshotRankings rankings;
+
+        Snapshot(final MetricVersions owner, final long number, final long[][] numViews,
+                 final long[][] numFavorites, final long[][] numRatings, final long[][] rating,
+                 final long[][] userRatings, final long[][] actorMeans) {
+            this.owner = owner;
+            this.number = number;
+            this.numViews = numViews;
+            this.numFavorites = numFavorites;
+            this.numRatings = numRatings;
+            this.rating = rating;
+            this.userRatings = userRatings;
+            this.actorMeans = actorMeans;
+            this.readers = new AtomicInteger();
+        }
+
+        /**
+         * @param catalog catalog the metrics belong to
+         * @return orderings of the catalog by the metrics of this version
+         */
+        synchronized SnapshotRankings getRankings(final Catalog catalog) {
+            if (this.rankings == null) {
+                this.rankings = new SnapshotRankings(catalog, this);
+            }
+            return this.rankings;
+        }
+
+        /**
+         * @param chunks chunks of a column
+         * @param id position of the value
+         * @return the value
+         */
+        private static long get(final long[][] chunks, final int id) {
+            return chunks[id >>> CHUNK_BITS][id & CHUNK_MASK];
+        }
+
+        /**
+         * @return number of changes recorded before the version was taken
+         */
+        public long getNumber() {
+            return number;
+        }
+
+        @Override
+        public int getNumViews(final int id) {
+            return (int) get(this.numViews, id);
+        }
+
+        @Override
+        public int getNumFavorites(final int id) {
+            return (int) get(this.numFavorites, id);
+        }
+
+        /**
+         * @param id video id
+         * @return number of ratings
+         */
+        public int getNumRatings(final int id) {
+            return (int) get(this.numRatings, id);
+        }
+
+        @Override
+        public double getRating(final int id) {
+            return Double.longBitsToDouble(get(this.rating, id));
+        }
+
+        /**
+         * @param id user id
+         * @return number of ratings given by the user
+         */
+        public int getUserRatings(final int id) {
+            return (int) get(this.userRatings, id);
+        }
+
+        /**
+         * @param id actor id
+         * @return filmography mean of the actor
+         */
+        public double getActorMean(final int id) {
+            return Double.longBitsToDouble(get(this.actorMeans, id));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package database;
+
+import common.Constants;
+import fileio.ActionInputData;
+import fileio.ResultSink;
+import models.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the actions of a file in parallel, in an order that gives the same results as the
+ * serial run.
+ * <p>
+ * Every action is given the state it reads and writes: the state of its user, the rating of
+ * its video for rating commands, and three metrics shared by all videos (views, favorites and
+ * ratings, the last one also covering the actor means and the user rating counts). Commands
+ * add to the metrics, queries and recommendations read them. Additions commute with each
+ * other and reads commute with each other, so an action only waits for the earlier actions
+ * it conflicts with: the previous group of a different kind on every metric, and the previous
+ * action of its user or of its rated video. Ratings of the same video stay in order, since the
+ * rounding of a rating depends on the order of the grades.
+ * <p>
+ * The resulting graph is run on a fork-join pool; an action is submitted as soon as the
+ * actions it waits for are done. Results are written in input order, as soon as every action
+ * before them is done. The repository must be built with {@link StripedLocks}.
+ * <p>
+ * An action that throws anything, errors included, fails its result and still releases the
+ * actions waiting for it, so the run never hangs: {@link #run} throws the failure of the first
+ * failed action in input order.
+ */
+public final class ParallelActionRunner {
+    /**
+     * access kinds, two accesses of the same kind commute unless they are writes
+     */
+    private static final int NONE = 0;
+    private static final int READ = 1;
+    private static final int ADD = 2;
+    private static final int WRITE = 3;
+
+    private final Repository repository;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param repository repository built with {@link StripedLocks}
+     * @param pool pool running the actions
+     */
+    public ParallelActionRunner(final Repository repository, final ForkJoinPool pool) {
+        if (repository.getVersions() == null) {
+            throw new IllegalArgumentException("the repository is not built for many threads");
+        }
+        this.repository = repository;
+        this.pool = pool;
+    }
+
+    /**
+     * runs the actions and writes their results in input order
+     * @param actions actions to be run
+     * @param resultSink destination of the results
+     * @throws IOException in case of exceptions to writing
+     */
+    public void run(final List<ActionInputData> actions,
+                    final ResultSink resultSink) throws IOException {
+        List<Node> nodes = new ArrayList<>();
+        List<Node> actionNodes = new ArrayList<>(actions.size());
+        buildGraph(actions, nodes, actionNodes);
+
+        // the roots are found before any node runs, since running nodes release others
+        List<Node> roots = new ArrayList<>();
+        for (Node node : nodes) {
+            if (node.pending.get() == 0) {
+                roots.add(node);
+            }
+        }
+        for (Node root : roots) {
+            this.pool.execute(() -> runNode(root));
+        }
+        for (Node node : actionNodes) {
+            String message;
+            try {
+                message = node.result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+            if (message != null) {
+                resultSink.write(node.action.getActionId(), message);
+            }
+        }
+    }
+
+    /**
+     * links every action to the earlier actions it conflicts with
+     * @param actions actions in input order
+     * @param nodes every node of the graph, filled by this method
+     * @param actionNodes nodes of the actions, in input order, filled by this method
+     */
+    private void buildGraph(final List<ActionInputData> actions, final List<Node> nodes,
+                            final List<Node> actionNodes) {
+        Catalog catalog = this.repository.getCatalog();
+        Resource[] userStates = new Resource[this.repository.getNumUsers()];
+        Resource[] videoRatings = new Resource[catalog.size()];
+        Resource views = new Resource();
+        Resource favorites = new Resource();
+        Resource ratings = new Resource();
+
+        for (ActionInputData action : actions) {
+            Node node = new Node(action);
+            nodes.add(node);
+            actionNodes.add(node);
+
+            User user = action.getUsername() == null ? null
+                    : this.repository.getUser(action.getUsername());
+            if (user != null) {
+                resource(userStates, user.getId()).access(node, WRITE, nodes);
+            }
+            switch (action.getActionType()) {
+                case Constants.COMMAND -> {
+                    switch (action.getType()) {
+                        case Constants.VIEW -> views.access(node, ADD, nodes);
+                        case Constants.FAVORITE -> favorites.access(node, ADD, nodes);
+                        case Constants.RATING -> {
+                            ratings.access(node, ADD, nodes);
+                            int videoId = catalog.getTitles().lookup(action.getTitle());
+                            if (catalog.getVideo(videoId) != null) {
+                                resource(videoRatings, videoId).access(node, WRITE, nodes);
+                            }
+                        }
+                        default -> { }
+                    }
+                }
+                case Constants.QUERY -> {
+                    Resource metric = queriedMetric(action, views, favorites, ratings);
+                    if (metric != null) {
+                        metric.access(node, READ, nodes);
+                    }
+                }
+                case Constants.RECOMMENDATION -> {
+                    switch (action.getType()) {
+                        case Constants.POPULAR -> views.access(node, READ, nodes);
+                        case Constants.FAVORITE -> favorites.access(node, READ, nodes);
+                        case Constants.BEST_UNSEEN, Constants.SEARCH ->
+                                ratings.access(node, READ, nodes);
+                        default -> { }
+                    }
+                }
+                default -> { }
+            }
+        }
+    }
+
+    /**
+     * @param action query data
+     * @param views views metric
+     * @param favorites favorites metric
+     * @param ratings ratings metric
+     * @return metric read by the query, null if it only reads data that never changes
+     */
+    private static Resource queriedMetric(final ActionInputData action, final Resource views,
+                                          final Resource favorites, final Resource ratings) {
+        if (action.getObjectType().equals(Constants.USERS)) {
+            return ratings;
+        }
+        return switch (action.getCriteria()) {
+            case Constants.MOST_VIEWED -> views;
+            case Constants.FAVORITE -> favorites;
+            case Constants.RATINGS, Constants.AVERAGE -> ratings;
+            default -> null;
+        };
+    }
+
+    /**
+     * @param resources resources by id, created when first used
+     * @param id resource id
+     * @return the resource
+     */
+    private static Resource resource(final Resource[] resources, final int id) {
+        if (resources[id] == null) {
+            resources[id] = new Resource();
+        }
+        return resources[id];
+    }
+
+    /**
+     * runs a node and submits the nodes that no longer wait for anything, even if the action
+     * failed
+     * @param node node to be run
+     */
+    private void runNode(final Node node) {
+        try {
+            if (node.action != null) {
+                node.result.complete(this.repository.execute(node.action));
+            }
+        } catch (Throwable e) {
+            // any throwable left uncaught would leave the result, and the run, waiting forever
+            node.result.completeExceptionally(e);
+        } finally {
+            for (Node successor : node.successors) {
+                if (successor.pending.decrementAndGet() == 0) {
+                    this.pool.execute(() -> runNode(successor));
+                }
+            }
+        }
+    }
+
+    /**
+     * An action, or a barrier joining a group of actions, in the dependency graph
+     */
+    private static final class Node {
+        /**
+         * the action, null for a barrier
+         */
+        private final ActionInputData action;
+        private final List<Node> successors;
+        /**
+         * number of nodes this one still waits for
+         */
+        private final AtomicInteger pending;
+        private final CompletableFuture<String> result;
+
+        Node(final ActionInputData action) {
+            this.action = action;
+            this.successors = new ArrayList<>(1);
+            this.pending = new AtomicInteger();
+            this.result = new CompletableFuture<>();
+        }
+
+        /**
+         * makes a node wait for this one
+         * @param successor node that waits
+         */
+        void precede(final Node successor) {
+            this.successors.add(successor);
+            successor.pending.incrementAndGet();
+        }
+    }
+
+    /**
+     * A piece of state and the group of the latest actions accessing it the same way
+     */
+    private static final class Resource {
+        private int kind = NONE;
+        private final List<Node> group = new ArrayList<>();
+        /**
+         * node every action of the current group waits for, null for the first group
+         */
+        private Node before;
+
+        /**
+         * makes an action wait for the earlier conflicting accesses
+         * @param node node of the action
+         * @param accessKind kind of the access
+         * @param nodes every node of the graph, barriers are added to it
+         */
+        void access(final Node node, final int accessKind, final List<Node> nodes) {
+            if (accessKind != WRITE && accessKind == this.kind) {
+                if (this.before != null) {
+                    this.before.precede(node);
+                }
+                this.group.add(node);
+                return;
+            }
+
+            // the group ends: a barrier keeps the number of edges linear in large groups
+            if (this.group.size() == 1) {
+                this.before = this.group.get(0);
+            } else if (!this.group.isEmpty()) {
+                Node barrier = new Node(null);
+                nodes.add(barrier);
+                for (Node member : this.group) {
+                    member.precede(barrier);
+                }
+                this.before = barrier;
+            }
+            if (this.before != null) {
+                this.before.precede(node);
+            }
+            this.group.clear();
+            this.group.add(node);
+            this.kind = accessKind;
+        }
+    }
+}
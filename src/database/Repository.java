@@ -3,212 +3,703 @@ package database;
 import common.Constants;
 import fileio.*;
 import models.*;
-import models.video.Movie;
-import models.video.Show;
 import models.video.Video;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
+import utils.IntIntMap;
+import utils.IntSet;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
  * Main database class. This class holds the data from input databases and also contains
  * the main logic of the queries.
+ * <p>
+ * By default the repository is used by a single thread. Built with {@link StripedLocks},
+ * {@link #execute} can be called from many threads at once, with these guarantees:
+ * <ul>
+ * <li>the actions of one user are atomic with respect to each other, so they give the same
+ * results as if they ran one after the other in the order their locks were taken;</li>
+ * <li>commands run in parallel: a command holds the lock of its user, the shared side of
+ * the gate of {@link AccessLocks} and, for a rating, the lock of the video. View and
+ * favorite counters are {@link java.util.concurrent.atomic.LongAdder}s; no leaderboard, genre
+ * ranking or actor mean is updated by a command, which only marks what it changed;</li>
+ * <li>queries pin a version of the metrics they read (video counters and ratings, user
+ * rating counts, actor means) and run on it without locks. Pinning records the marked
+ * changes first, under the exclusive side of the gate, so a version holds every command that
+ * finished before it was pinned and never part of a command; see {@link MetricVersions};</li>
+ * <li>recommendations hold the lock of their user and pin a version of the metrics like
+ * the queries; the orderings of the catalog they walk are sorted from that version the first
+ * time it is read (see {@link SnapshotRankings}).</li>
+ * </ul>
+ * Final counters do not depend on the interleaving. A rating is the only metric whose last
+ * bits depend on the order in which ratings of the same video arrive, since floating point
+ * additions are not associative; that order is the one of the video lock, which is also the
+ * order of the ratings in the command log.
+ * <p>
+ * Built with a {@link CommandLog}, the repository logs every command before applying it, and
+ * {@link #runActions} hands a result over only once the commands before it are committed to
+ * the log. The log is bound to the input database it was written for (see
+ * {@link InputFingerprint}) and replayed first: every logged user must exist, and every
+ * logged command is applied, without being logged again, through the same path as the
+ * commands that are run, so the repository starts from the state the log holds. When the
+ * actions are run again, after a crash or not, a command whose id is in the log must be the
+ * logged one; it is not applied a second time and gives the result it gave when replayed.
  */
 public final class Repository {
     private final List<ActionInputData> commandsData;
 
-    private final HashMap<String, User> userDict;
+    /**
+     * usernames and the users, indexed by user id
+     */
+    private final SymbolTable userIds;
+    private final User[] users;
+    /**
+     * users that gave at least one rating, by number of ratings, kept in the serial mode
+     */
+    private final Leaderboard<User> usersByRatings;
 
-    private final HashMap<String, Actor> actorDict;
+    /**
+     * the actors and their indexes
+     */
+    private final ActorIndex actorIndex;
 
     /**
-     * set containing both movie and show names
+     * all the movies and shows, indexed by video id
      */
-    private final LinkedHashSet<String> videoSet;
+    private final Catalog catalog;
+
+    private final ResultSink resultSink;
+    private final AccessLocks locks;
     /**
-     * map containing movies
+     * versions of the metrics read by the queries and the recommendations, null in the
+     * serial mode
      */
-    private final HashMap<String, Video> movieDict;
+    private final MetricVersions versions;
+    private final CommandStats stats;
     /**
-     * map containing shows
+     * log of the commands, null if the commands are not logged
      */
-    private final HashMap<String, Video> showDict;
+    private final CommandLog commandLog;
     /**
-     * map containing both movies and shows
+     * logged commands applied by the replay and not run again yet, by action id, null if the
+     * commands are not logged
      */
-    private final HashMap<String, Video> videoDict;
-
-    private final Writer fileWriter;
-    private final JSONArray arrayResult;
+    private final Map<Integer, ReplayedCommand> loggedCommands;
 
     /**
-     * all of the input is put into dictionaries/arrays.
+     * all of the input is encoded to ids and put into arrays.
      * Additional processing useful the queries is done for every model.
      * @param input inputData
-     * @param fileWriter fileWriter associated with the output file
-     * @param arrayResult JSON array used for writing json to output file
+     * @param resultSink destination of the action results
      */
-    public Repository(final Input input, final Writer fileWriter, final JSONArray arrayResult) {
-        this.actorDict = new HashMap<>();
-        for (ActorInputData actorData : input.getActors()) {
-            this.actorDict.put(actorData.getName(), new Actor(actorData));
-        }
+    public Repository(final Input input, final ResultSink resultSink) {
+        this(input, resultSink, AccessLocks.NONE);
+    }
 
+    /**
+     * @param input inputData
+     * @param resultSink destination of the action results, used by {@link #runActions}
+     * @param locks locks taken by every action, {@link AccessLocks#NONE} for a single thread.
+     *              With any other locks, the queries run on versions of the metrics
+     */
+    public Repository(final Input input, final ResultSink resultSink,
+                      final AccessLocks locks) {
+        this(input, resultSink, locks, null);
+    }
+
+    /**
+     * @param input inputData
+     * @param resultSink destination of the action results, used by {@link #runActions}
+     * @param locks locks taken by every action, {@link AccessLocks#NONE} for a single thread
+     * @param commandLog log of the commands, written for this input database or new,
+     *                   null if the commands are not logged
+     * @throws IllegalStateException if the log names a user missing from the input
+     * @throws UncheckedIOException if the log cannot be read or was written for another input
+     */
+    public Repository(final Input input, final ResultSink resultSink,
+                      final AccessLocks locks, final CommandLog commandLog) {
+        this.locks = locks;
+        this.stats = new CommandStats();
+        this.versions = newVersions(locks, sizeOf(input.getMovies()) + sizeOf(input.getSerials()),
+                                    sizeOf(input.getUsers()), sizeOf(input.getActors()));
+        this.catalog = new Catalog(input.getMovies(), input.getSerials(), this.versions);
+        this.actorIndex = new ActorIndex(input.getActors(), this.catalog);
         this.commandsData = input.getCommands();
+        this.userIds = new SymbolTable();
+        this.users = loadUsers(input.getUsers());
+        this.usersByRatings = new Leaderboard<>(User.RATINGS_ORDER,
+                                                user -> user.getNumRatings() > 0);
+        this.resultSink = resultSink;
+        this.commandLog = commandLog;
+        this.loggedCommands = commandLog == null ? null : new ConcurrentHashMap<>();
+        prepare(InputFingerprint.of(input));
+    }
 
-        this.videoSet = new LinkedHashSet<>();
-        this.videoDict = new HashMap<>();
+    /**
+     * opens the database of a snapshot, with no input to parse and no name or index to build
+     * @param snapshot snapshot of a repository built from an input database
+     * @param actions actions run by {@link #runActions}
+     * @param resultSink destination of the action results, used by {@link #runActions}
+     * @param locks locks taken by every action, {@link AccessLocks#NONE} for a single thread
+     * @param commandLog log of the commands, written for the database of the snapshot or new,
+     *                   null if the commands are not logged
+     * @throws IllegalStateException if the log names a user missing from the database
+     * @throws UncheckedIOException if the log cannot be read or was written for another input
+     */
+    public Repository(final DatabaseSnapshot snapshot, final List<ActionInputData> actions,
+                      final ResultSink resultSink, final AccessLocks locks,
+                      final CommandLog commandLog) {
+        DatabaseSnapshot.Reader in = snapshot.reader();
+        this.locks = locks;
+        this.stats = new CommandStats();
+        this.versions = newVersions(locks, snapshot.getNumVideos(), snapshot.getNumUsers(),
+                                    snapshot.getNumActors());
+        this.catalog = new Catalog(in, this.versions);
+        this.actorIndex = new ActorIndex(in, this.catalog);
+        this.commandsData = actions;
+        this.userIds = SymbolTable.read(in);
+        this.users = readUsers(in);
+        this.usersByRatings = new Leaderboard<>(User.RATINGS_ORDER,
+                                                user -> user.getNumRatings() > 0);
+        this.resultSink = resultSink;
+        this.commandLog = commandLog;
+        this.loggedCommands = commandLog == null ? null : new ConcurrentHashMap<>();
+        prepare(snapshot.getFingerprint());
+    }
 
-        this.movieDict = new HashMap<>();
-        for (MovieInputData movieData : input.getMovies()) {
-            this.videoSet.add(movieData.getTitle());
-            Movie movie = new Movie(movieData);
-            this.movieDict.put(movieData.getTitle(), movie);
-            this.videoDict.put(movieData.getTitle(), movie);
+    /**
+     * @param locks locks taken by every action
+     * @param numVideos number of input videos
+     * @param numUsers number of input users
+     * @param numActors number of input actors
+     * @return versions of the metrics, null in the serial mode
+     */
+    private static MetricVersions newVersions(final AccessLocks locks, final int numVideos,
+                                              final int numUsers, final int numActors) {
+        return locks == AccessLocks.NONE ? null
+                : new MetricVersions(locks, numVideos, numUsers, numActors);
+    }
+
+    /**
+     * gives ids to the input users and adds their views and favorites to the counters
+     * @param usersData input users, may be null
+     * @return the users, indexed by user id
+     */
+    private User[] loadUsers(final List<UserInputData> usersData) {
+        SymbolTable titles = this.catalog.getTitles();
+        ArrayList<User> userList = new ArrayList<>();
+        if (usersData != null) {
+            for (UserInputData userData : usersData) {
+                int id = this.userIds.intern(userData.getUsername());
+                User user = new User(userData, id, titles);
+                if (id == userList.size()) {
+                    userList.add(user);
+                } else {
+                    userList.set(id, user);
+                }
+
+                // counted from the input list, where a title listed twice counts twice
+                if (userData.getFavoriteMovies() != null) {
+                    for (String title : userData.getFavoriteMovies()) {
+                        Video video = this.catalog.getVideo(titles.lookup(title));
+                        if (video != null) {
+                            video.incrementNumFavorites();
+                        }
+                    }
+                }
+
+                IntIntMap history = user.getHistory();
+                for (int i = 0; i < history.size(); i++) {
+                    Video video = this.catalog.getVideo(history.keyAt(i));
+                    if (video != null) {
+                        video.addNumViews(history.valueAt(i));
+                    }
+                }
+            }
         }
+        return userList.toArray(new User[0]);
+    }
 
-        this.showDict = new HashMap<>();
-        for (SerialInputData showData : input.getSerials()) {
-            this.videoSet.add(showData.getTitle());
-            Show show = new Show(showData);
-            this.showDict.put(showData.getTitle(), show);
-            this.videoDict.put(showData.getTitle(), show);
+    /**
+     * reads the users written by {@link #write}. Their views and favorites are already in
+     * the counters of the catalog
+     * @param in snapshot placed on the users, after the user table
+     * @return the users, indexed by user id
+     */
+    private User[] readUsers(final DatabaseSnapshot.Reader in) {
+        User[] userArray = new User[this.userIds.size()];
+        for (int id = 0; id < userArray.length; id++) {
+            String subscriptionType = in.readString();
+            int[] seen = in.readInts();
+            int[] views = in.readInts();
+            IntIntMap history = new IntIntMap(seen.length);
+            for (int i = 0; i < seen.length; i++) {
+                history.put(seen[i], views[i]);
+            }
+            IntSet favorites = new IntSet();
+            for (int videoId : in.readInts()) {
+                favorites.add(videoId);
+            }
+            userArray[id] = new User(id, this.userIds.getName(id), subscriptionType, history,
+                                     favorites);
         }
+        return userArray;
+    }
 
-        this.userDict = new HashMap<>();
-        for (UserInputData userData : input.getUsers()) {
-            this.userDict.put(userData.getUsername(), new User(userData));
-            for (String favoriteVideo : userData.getFavoriteMovies()) {
-                if (this.videoDict.containsKey(favoriteVideo)) {
-                    this.videoDict.get(favoriteVideo).incrementNumFavorites();
-                }
+    /**
+     * writes the database of the repository, which must not have run any command yet
+     * @param out snapshot being written
+     * @throws IOException in case of exceptions to writing
+     */
+    void write(final DatabaseSnapshot.Writer out) throws IOException {
+        this.catalog.write(out);
+        this.actorIndex.write(out);
+        this.userIds.write(out);
+        for (User user : this.users) {
+            out.writeString(user.getSubscriptionType());
+            IntIntMap history = user.getHistory();
+            int[] seen = new int[history.size()];
+            int[] views = new int[history.size()];
+            for (int i = 0; i < seen.length; i++) {
+                seen[i] = history.keyAt(i);
+                views[i] = history.valueAt(i);
+            }
+            out.writeInts(seen);
+            out.writeInts(views);
+            int[] favorites = user.getFavoriteMovies().toArray();
+            Arrays.sort(favorites);
+            out.writeInts(favorites);
+        }
+    }
+
+    /**
+     * builds the rankings, records the first version of the metrics and replays the command
+     * log, once the database is loaded
+     * @param fingerprint fingerprint of the input database, see {@link InputFingerprint}
+     */
+    private void prepare(final long fingerprint) {
+        this.catalog.buildRankings();
+        if (this.versions != null) {
+            for (int id = 0; id < this.catalog.size(); id++) {
+                this.versions.recordVideo(id, this.catalog.getColumns());
+            }
+            for (User user : this.users) {
+                this.versions.recordUser(user.getId(), user.getNumRatings());
+            }
+            for (Actor actor : this.actorIndex.getActors()) {
+                this.versions.recordActor(actor.getId(), actor.getFilmographyRatingMean());
             }
+        }
 
-            for (String videoTitle : userData.getHistory().keySet()) {
-                if (this.videoDict.containsKey(videoTitle)) {
-                    this.videoDict.get(videoTitle)
-                            .addNumViews(userData.getHistory().get(videoTitle));
-                }
+        if (this.commandLog != null) {
+            try {
+                this.commandLog.replay(fingerprint, command -> {
+                    if (getUser(command.getUsername()) == null) {
+                        throw new IllegalStateException(this.commandLog.getPath()
+                                + " logs command " + command.getActionId()
+                                + " of unknown user " + command.getUsername());
+                    }
+                    String message = applyCommand(command, false);
+                    this.loggedCommands.put(command.getActionId(),
+                                            new ReplayedCommand(command, message));
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         }
+    }
 
-        this.fileWriter = fileWriter;
-        this.arrayResult = arrayResult;
+    /**
+     * @param list input list, may be null
+     * @return number of elements
+     */
+    private static int sizeOf(final List<?> list) {
+        return list == null ? 0 : list.size();
     }
 
     /**
-     * function that writes parses and writes json data to output
+     * function that passes the result of an action to the output
      * @param id action of id
      * @param message message to be written to output
      * @throws IOException needed for writing json to output
      */
     private void writeMessage(final int id, final String message) throws IOException {
-        JSONObject data = this.fileWriter.writeFile(id, "", message);
-        this.arrayResult.add(data);
+        this.resultSink.write(id, message);
     }
 
     /**
-     * function that runs the user commands
+     * gets the id of a title, under the shared side of the gate. A title is added under the
+     * exclusive side, so it must be called before a command takes the shared side
+     * @param title video title
+     * @param add whether a missing title is added to the table
+     * @return id of the title, or MISSING
+     */
+    private int titleId(final String title, final boolean add) {
+        SymbolTable titles = this.catalog.getTitles();
+        this.locks.lockShared();
+        int videoId;
+        try {
+            videoId = titles.lookup(title);
+        } finally {
+            this.locks.unlockShared();
+        }
+        if (videoId != SymbolTable.MISSING || !add) {
+            return videoId;
+        }
+
+        this.locks.lockExclusive();
+        try {
+            return titles.intern(title);
+        } finally {
+            this.locks.unlockExclusive();
+        }
+    }
+
+    /**
+     * @param action action data
+     * @return the user of the action
+     * @throws IllegalArgumentException if there is no user with this name
+     */
+    private User userOf(final ActionInputData action) {
+        User user = getUser(action.getUsername());
+        if (user == null) {
+            throw new IllegalArgumentException("action " + action.getActionId()
+                    + " names unknown user " + action.getUsername());
+        }
+        return user;
+    }
+
+    /**
+     * takes a command out of the logged ones, checking that it is the logged command
+     * @param action command data
+     * @return the replayed command, null if the command was not logged by an earlier run
+     * @throws IllegalStateException if another command was logged with the same id
+     */
+    private ReplayedCommand takeLogged(final ActionInputData action) {
+        if (this.loggedCommands == null) {
+            return null;
+        }
+        ReplayedCommand replayed = this.loggedCommands.remove(action.getActionId());
+        if (replayed == null) {
+            return null;
+        }
+        ActionInputData logged = replayed.command;
+        if (!logged.getType().equals(action.getType())
+            || !Objects.equals(logged.getUsername(), action.getUsername())
+            || !Objects.equals(logged.getTitle(), action.getTitle())
+            || Double.compare(logged.getGrade(), action.getGrade()) != 0
+            || logged.getSeasonNumber() != action.getSeasonNumber()) {
+            throw new IllegalStateException(this.commandLog.getPath() + " logs another command "
+                    + "with id " + action.getActionId());
+        }
+        return replayed;
+    }
+
+    /**
+     * function that runs the user commands. A command of the log was applied when the log
+     * was replayed, so it only gives its result again
      * @param action data used for performing queries
-     * @throws IOException needed for writing json to output
+     * @return result message
+     */
+    private String runCommands(final ActionInputData action) {
+        ReplayedCommand replayed = takeLogged(action);
+        if (replayed != null) {
+            return replayed.message;
+        }
+        return applyCommand(action, true);
+    }
+
+    /**
+     * applies a command to the user and the shared state
+     * @param action command data
+     * @param log whether the command is logged before being applied, false if it is replayed
+     *            from the log
+     * @return result message
      */
-    private void runCommands(final ActionInputData action) throws IOException {
-        User user = this.userDict.get(action.getUsername());
-        switch (action.getType()) {
-            case Constants.FAVORITE -> writeMessage(action.getActionId(),
-                    user.commandFavorite(action, this.videoDict));
-            case Constants.VIEW -> writeMessage(action.getActionId(),
-                    user.commandView(action, this.videoDict));
-            case Constants.RATING -> writeMessage(action.getActionId(),
-                    user.commandRating(action, this.movieDict, this.videoDict));
+    private String applyCommand(final ActionInputData action, final boolean log) {
+        User user = userOf(action);
+        String message = null;
+        this.locks.lockUser(user.getId());
+        try {
+            switch (action.getType()) {
+                case Constants.FAVORITE -> {
+                    int videoId = titleId(action.getTitle(), false);
+                    this.locks.lockShared();
+                    try {
+                        log(action, log);
+                        message = user.commandFavorite(action, videoId, this.catalog);
+                    } finally {
+                        this.locks.unlockShared();
+                    }
+                }
+                case Constants.VIEW -> {
+                    int videoId = titleId(action.getTitle(), true);
+                    this.locks.lockShared();
+                    try {
+                        log(action, log);
+                        message = user.commandView(action, videoId, this.catalog);
+                    } finally {
+                        this.locks.unlockShared();
+                    }
+                }
+                case Constants.RATING -> message = rate(user, action, log);
+                default -> { }
+            }
+        } finally {
+            this.locks.unlockUser(user.getId());
         }
+        if (message != null) {
+            this.stats.record(action.getType(), message);
+        }
+        return message;
     }
 
     /**
-     * function that filters query types
+     * runs a rating command. The rating count of the user and the rating of the video change
+     * together, under the lock of the video. In the serial mode the user is moved on the
+     * users leaderboard and the means of the actors of the video are computed again; in the
+     * concurrent mode they are recorded by the next version of the metrics
+     * @param user user giving the rating
+     * @param action command data
+     * @param log whether the command is logged before being applied, false if it is replayed
+     *            from the log
+     * @return result message
+     */
+    private String rate(final User user, final ActionInputData action, final boolean log) {
+        int videoId = titleId(action.getTitle(), false);
+        this.locks.lockShared();
+        this.locks.lockVideo(videoId);
+        try {
+            // logged under the lock of the video, so the log keeps the ratings of a video in
+            // the order they were applied: the rating is a floating point sum that depends on it
+            log(action, log);
+            if (this.versions != null) {
+                String message = user.commandRating(action, videoId, this.catalog);
+                this.versions.userChanged(user.getId());
+                return message;
+            }
+            // the rating count of the user may change, so it is moved on the leaderboard
+            this.usersByRatings.remove(user);
+            String message = user.commandRating(action, videoId, this.catalog);
+            this.usersByRatings.add(user);
+            this.actorIndex.videoRated(videoId, this.catalog);
+            return message;
+        } finally {
+            this.locks.unlockVideo(videoId);
+            this.locks.unlockShared();
+        }
+    }
+
+    /**
+     * records the metrics changed by the commands since the previous version: the counters
+     * of the changed videos, the rating counts of the changed users and the means of the
+     * actors of the changed videos. Called by {@link MetricVersions#pin} once no command runs
+     */
+    private void recordChanges() {
+        BitSet changedActors = new BitSet();
+        this.versions.drainChangedVideos(videoId -> {
+            this.versions.recordVideo(videoId, this.catalog.getColumns());
+            for (int actorId : this.actorIndex.getActorsOf(videoId)) {
+                changedActors.set(actorId);
+            }
+        });
+        this.versions.drainChangedUsers(userId ->
+                this.versions.recordUser(userId, this.users[userId].getNumRatings()));
+        Actor[] actors = this.actorIndex.getActors();
+        for (int actorId = changedActors.nextSetBit(0); actorId >= 0;
+             actorId = changedActors.nextSetBit(actorId + 1)) {
+            actors[actorId].updateRatingMean(this.catalog);
+            this.versions.recordActor(actorId, actors[actorId].getFilmographyRatingMean());
+        }
+    }
+
+    /**
+     * pins the latest version of the metrics, recording the changes of the commands first.
+     * Must be followed by {@link MetricVersions#release}
+     * @return the pinned version
+     */
+    public MetricVersions.Snapshot pinVersion() {
+        return this.versions.pin(this::recordChanges);
+    }
+
+    /**
+     * appends a command to the log, every command is logged, even the failed ones, since a
+     * failed rating still counts for the user
+     * @param action command data
+     * @param log false if the command must not be logged
+     */
+    private void log(final ActionInputData action, final boolean log) {
+        if (!log || this.commandLog == null) {
+            return;
+        }
+        try {
+            this.commandLog.append(action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * function that filters query types. In the serial mode the queries read the live state,
+     * otherwise they run on a pinned version of the metrics
      * @param action data used for performing queries
-     * @throws IOException needed for writing json to output
+     * @return result message, null if the query has no result
      */
-    private void runQueries(final ActionInputData action) throws IOException {
-        switch (action.getObjectType()) {
-            case Constants.ACTORS -> this.runActorQueries(action);
-            case Constants.MOVIES -> this.runVideoQueries(action, this.movieDict);
-            case Constants.SHOWS -> this.runVideoQueries(action, this.showDict);
-            case Constants.USERS -> this.runUserQueries(action);
+    private String runQueries(final ActionInputData action) {
+        if (this.versions == null) {
+            return runQueries(action, null);
+        }
+        MetricVersions.Snapshot snapshot = pinVersion();
+        try {
+            return runQueries(action, snapshot);
+        } finally {
+            this.versions.release(snapshot);
         }
     }
 
+    /**
+     * @param action data used for performing queries
+     * @param snapshot version of the metrics to be read, null to read the live state
+     * @return result message, null if the query has no result
+     */
+    private String runQueries(final ActionInputData action,
+                              final MetricVersions.Snapshot snapshot) {
+        return switch (action.getObjectType()) {
+            case Constants.ACTORS -> this.runActorQueries(action, snapshot);
+            case Constants.MOVIES -> this.runVideoQueries(action, this.catalog.getMovieIndex(),
+                                                          snapshot);
+            case Constants.SHOWS -> this.runVideoQueries(action, this.catalog.getShowIndex(),
+                                                         snapshot);
+            case Constants.USERS -> this.runUserQueries(action, snapshot);
+            default -> null;
+        };
+    }
+
     /**
      * function that runs the actor queries
      * @param action data used for performing queries
-     * @throws IOException needed for writing json to output
+     * @param snapshot version of the metrics to be read, null to read the live state
+     * @return result message, null if the criteria is unknown
      */
-    private void runActorQueries(final ActionInputData action) throws IOException {
-        switch (action.getCriteria()) {
-            case Constants.AVERAGE -> writeMessage(action.getActionId(),
-                    Actor.queryAverage(this.actorDict, this.videoDict, action));
-            case Constants.AWARDS -> writeMessage(action.getActionId(),
-                    Actor.queryAwards(this.actorDict, action));
-            case Constants.FILTER_DESCRIPTIONS -> writeMessage(action.getActionId(),
-                    Actor.queryFilterDescriptions(this.actorDict, action));
-        }
+    private String runActorQueries(final ActionInputData action,
+                                   final MetricVersions.Snapshot snapshot) {
+        Actor[] actors = this.actorIndex.getActors();
+        return switch (action.getCriteria()) {
+            case Constants.AVERAGE -> snapshot == null
+                    ? Actor.queryAverage(actors,
+                                         id -> actors[id].getFilmographyRatingMean(), action)
+                    : Actor.queryAverage(actors, snapshot::getActorMean, action);
+            case Constants.AWARDS -> Actor.queryAwards(this.actorIndex, action);
+            case Constants.FILTER_DESCRIPTIONS ->
+                    Actor.queryFilterDescriptions(this.actorIndex, action);
+            default -> null;
+        };
     }
 
     /**
      * function that runs the videos query.
      * @param action data used for performing queries
-     * @param dict dictionary containing either movies or shows
-     * @throws IOException needed for writing json to output
+     * @param index index of either movies or shows
+     * @param snapshot version of the metrics to be read, null to read the live state
+     * @return result message, null if the criteria is unknown
      */
-    private void runVideoQueries(final ActionInputData action,
-                                 final HashMap<String, Video> dict) throws IOException {
-        ArrayList<Video> videosFiltered = Video.findShows(dict, action.getFilters());
-        switch (action.getCriteria()) {
-            case Constants.RATINGS -> writeMessage(action.getActionId(),
-                    Video.queryRating(videosFiltered, action));
-            case Constants.LONGEST -> writeMessage(action.getActionId(),
-                    Video.queryLongest(videosFiltered, action));
-            case Constants.FAVORITE -> writeMessage(action.getActionId(),
-                    Video.queryFavorite(videosFiltered, action));
-            case Constants.MOST_VIEWED -> writeMessage(action.getActionId(),
-                    Video.queryMostViewed(videosFiltered, action));
+    private String runVideoQueries(final ActionInputData action, final VideoIndex index,
+                                   final MetricVersions.Snapshot snapshot) {
+        // without filters, the top of the live leaderboards is already sorted
+        Leaderboard<Video> leaderboard = index.getLeaderboard(action.getCriteria());
+        if (snapshot == null && leaderboard != null && !Video.hasFilters(action.getFilters())
+            && (action.getSortType().equals(Constants.ASCENDING)
+                || action.getSortType().equals(Constants.DESCENDING))) {
+            return Video.queryLeaderboard(leaderboard, action);
         }
+
+        VideoMetrics metrics = snapshot == null ? this.catalog.getColumns() : snapshot;
+        ArrayList<Video> videosFiltered = Video.findShows(this.catalog, index,
+                                                          action.getFilters());
+        return switch (action.getCriteria()) {
+            case Constants.RATINGS -> Video.queryRating(videosFiltered, metrics, action);
+            case Constants.LONGEST -> Video.queryLongest(videosFiltered, action);
+            case Constants.FAVORITE -> Video.queryFavorite(videosFiltered, metrics, action);
+            case Constants.MOST_VIEWED -> Video.queryMostViewed(videosFiltered, metrics,
+                                                                action);
+            default -> null;
+        };
     }
 
     /**
      * function that runs the user query
      * @param action data used for performing queries
-     * @throws IOException needed for writing json to output
+     * @param snapshot version of the metrics to be read, null to read the live state
+     * @return result message, null if the criteria is unknown
      */
-    private void runUserQueries(final ActionInputData action) throws IOException {
-        if (action.getCriteria().equals(Constants.NUM_RATINGS)) {
-            writeMessage(action.getActionId(),
-                    User.getUsersQuery(this.userDict, action));
+    private String runUserQueries(final ActionInputData action,
+                                  final MetricVersions.Snapshot snapshot) {
+        if (!action.getCriteria().equals(Constants.NUM_RATINGS)) {
+            return null;
+        }
+        if (snapshot == null) {
+            return User.getUsersQuery(this.usersByRatings, action);
         }
+        return User.getUsersQuery(this.users, snapshot::getUserRatings, action);
     }
 
     /**
      * function that filters recommendations and runs the correct one
      * @param action data used for performing queries
-     * @throws IOException needed for writing json to output
+     * @return result message, null if the type is unknown
      */
-    private void runRecommendations(final ActionInputData action) throws IOException {
-        User user = this.userDict.get(action.getUsername());
-        switch (action.getType()) {
-            case Constants.STANDARD -> writeMessage(action.getActionId(),
-                    user.recommendStandard(this.videoSet, this.videoDict));
-            case Constants.BEST_UNSEEN -> writeMessage(action.getActionId(),
-                    user.recommendBestUnseen(this.videoSet, this.videoDict));
-            case Constants.POPULAR -> writeMessage(action.getActionId(),
-                    user.recommendPopular(this.videoSet, this.videoDict));
-            case Constants.FAVORITE -> writeMessage(action.getActionId(),
-                    user.recommendFavorite(this.videoSet, this.videoDict));
-            case Constants.SEARCH -> writeMessage(action.getActionId(),
-                    user.recommendSearch(this.videoSet, this.videoDict, action.getGenre()));
+    private String runRecommendations(final ActionInputData action) {
+        User user = userOf(action);
+        if (this.versions == null) {
+            return runRecommendations(action, user, this.catalog);
         }
+        // pinned under the user lock, so the version holds every earlier command of the user
+        this.locks.lockUser(user.getId());
+        MetricVersions.Snapshot snapshot = pinVersion();
+        try {
+            return runRecommendations(action, user, snapshot.getRankings(this.catalog));
+        } finally {
+            this.versions.release(snapshot);
+            this.locks.unlockUser(user.getId());
+        }
+    }
+
+    /**
+     * @param action data used for performing queries
+     * @param user user asking for the recommendation
+     * @param rankings orderings of the videos and genres to be read
+     * @return result message, null if the type is unknown
+     */
+    private String runRecommendations(final ActionInputData action, final User user,
+                                      final VideoRankings rankings) {
+        return switch (action.getType()) {
+            case Constants.STANDARD -> user.recommendStandard(this.catalog);
+            case Constants.BEST_UNSEEN -> user.recommendBestUnseen(this.catalog, rankings);
+            case Constants.POPULAR -> user.recommendPopular(this.catalog, rankings);
+            case Constants.FAVORITE -> user.recommendFavorite(rankings);
+            case Constants.SEARCH -> user.recommendSearch(rankings,
+                    this.catalog.genreOf(action.getGenre()));
+            default -> null;
+        };
+    }
+
+    /**
+     * runs a single action. Safe to call from many threads if the repository was built
+     * with {@link StripedLocks}
+     * @param action action data
+     * @return result message, null if the action has no result
+     */
+    public String execute(final ActionInputData action) {
+        return switch (action.getActionType()) {
+            case Constants.COMMAND -> this.runCommands(action);
+            case Constants.QUERY -> this.runQueries(action);
+            case Constants.RECOMMENDATION -> this.runRecommendations(action);
+            default -> null;
+        };
     }
 
     /**
@@ -217,12 +708,128 @@ public final class Repository {
      * @throws IOException needed for writing json to output
      */
     public void runActions() throws IOException {
+        if (this.commandLog != null) {
+            DurableSink sink = new DurableSink();
+            for (ActionInputData action : this.commandsData) {
+                String message = execute(action);
+                if (message != null) {
+                    sink.write(action.getActionId(), message);
+                }
+            }
+            sink.close();
+            return;
+        }
         for (ActionInputData action : this.commandsData) {
-            switch (action.getActionType()) {
-                case Constants.COMMAND -> this.runCommands(action);
-                case Constants.QUERY -> this.runQueries(action);
-                case Constants.RECOMMENDATION -> this.runRecommendations(action);
+            String message = execute(action);
+            if (message != null) {
+                writeMessage(action.getActionId(), message);
             }
         }
     }
+
+    /**
+     * Runs the actions on a pool, in parallel where they do not depend on each other.
+     * The results are the same as the ones of {@link #runActions()}, in the same order.
+     * The repository must be built with {@link StripedLocks}
+     * @param pool pool running the actions
+     * @throws IOException needed for writing json to output
+     */
+    public void runActions(final ForkJoinPool pool) throws IOException {
+        if (this.commandLog != null) {
+            DurableSink sink = new DurableSink();
+            new ParallelActionRunner(this, pool).run(this.commandsData, sink);
+            sink.close();
+            return;
+        }
+        new ParallelActionRunner(this, pool).run(this.commandsData, this.resultSink);
+    }
+
+    /**
+     * Command replayed from the log, with the result it gave
+     */
+    private static final class ReplayedCommand {
+        private final ActionInputData command;
+        private final String message;
+
+        private ReplayedCommand(final ActionInputData command, final String message) {
+            this.command = command;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Holds the results back while the log has commands that are not committed, so a result
+     * is never handed over before the commands that led to it are durable. Results are
+     * written in order: when nothing is left uncommitted, every command logged before a
+     * result is committed too. Closing it commits the log and writes the held results
+     */
+    private final class DurableSink implements ResultSink {
+        private final List<Integer> heldIds = new ArrayList<>();
+        private final List<String> heldMessages = new ArrayList<>();
+
+        @Override
+        public void write(final int id, final String message) throws IOException {
+            heldIds.add(id);
+            heldMessages.add(message);
+            if (!commandLog.hasUncommitted()) {
+                release();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            commandLog.commit();
+            release();
+        }
+
+        /**
+         * writes the held results
+         * @throws IOException in case of exceptions to writing
+         */
+        private void release() throws IOException {
+            for (int i = 0; i < heldIds.size(); i++) {
+                writeMessage(heldIds.get(i), heldMessages.get(i));
+            }
+            heldIds.clear();
+            heldMessages.clear();
+        }
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    public CommandStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return versions of the metrics read by the queries, null in the serial mode
+     */
+    public MetricVersions getVersions() {
+        return versions;
+    }
+
+    /**
+     * @return log of the commands, null if the commands are not logged
+     */
+    public CommandLog getCommandLog() {
+        return commandLog;
+    }
+
+    /**
+     * @return number of users
+     */
+    public int getNumUsers() {
+        return this.users.length;
+    }
+
+    /**
+     * @param username name of a user
+     * @return the user, or null if there is no user with this name
+     */
+    public User getUser(final String username) {
+        int id = this.userIds.lookup(username);
+        return id == SymbolTable.MISSING ? null : this.users[id];
+    }
 }
@@ -0,0 +1,338 @@
+package database;
+
+import models.video.Video;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+
+/**
+ * Orderings of the catalog read from a pinned version of the metrics, used by the
+ * recommendations of the concurrent mode instead of the live leaderboards.
+ * <p>
+ * An ordering is made the first time a reader of the version asks for it, then shared by the
+ * other readers of the same version. It is not sorted from scratch: the ordering made last,
+ * for any version, is kept in {@link Latest}, and only the videos whose key changed since are
+ * taken out, sorted and merged back. The other videos keep their relative order, since their
+ * keys and the ties between them are the same. Two readers may make the same ordering at
+ * once; both get the same result.
+ */
+final class SnapshotRankings implements VideoRankings {
+    /**
+     * highest key first, then by position in the catalog
+     */
+    private static final IdOrder HIGHEST_FIRST = (keys, id1, id2) -> {
+        int compare = Double.compare(keys[id2], keys[id1]);
+        return compare != 0 ? compare : Integer.compare(id1, id2);
+    };
+
+    private final Catalog catalog;
+    private final MetricVersions.Snapshot snapshot;
+    private final Latest latest;
+    /**
+     * lowest rating first, then by title, like {@link Video#compareTo}
+     */
+    private final IdOrder lowestRatedFirst;
+    /**
+     * ratings of the catalog videos in the version, by video id
+     */
+    private volatile double[] ratings;
+    /**
+     * favorite counters of the catalog videos in the version, by video id
+     */
+    private volatile double[] favorites;
+    private volatile Ordering bestRated;
+    private volatile Ordering mostFavorite;
+    /**
+     * catalog videos of every genre sorted by rating, then by title, by genre id
+     */
+    private final AtomicReferenceArray<Ordering> byRating;
+    /**
+     * genre ids, most viewed first
+     */
+    private volatile int[] popularGenres;
+
+    /**
+     * @param catalog catalog of all videos
+     * @param snapshot version of the metrics
+     */
+    SnapshotRankings(final Catalog catalog, final MetricVersions.Snapshot snapshot) {
+        this.catalog = catalog;
+        this.snapshot = snapshot;
+        this.latest = catalog.getLatestRankings();
+        this.lowestRatedFirst = (keys, id1, id2) -> {
+            int compare = Double.compare(keys[id1], keys[id2]);
+            return compare != 0 ? compare : catalog.getVideo(id1).getTitle()
+                    .compareTo(catalog.getVideo(id2).getTitle());
+        };
+        this.byRating = new AtomicReferenceArray<>(catalog.getNumGenres());
+    }
+
+    @Override
+    public Iterator<Video> iterateBestRated() {
+        Ordering ordering = this.bestRated;
+        if (ordering == null) {
+            Ordering previous = this.latest.bestRated;
+            ordering = Ordering.repair(previous, previous == null ? this.latest.allIds
+                    : previous.ids, ratings(), HIGHEST_FIRST, false);
+            this.latest.bestRated = ordering;
+            this.bestRated = ordering;
+        }
+        return new VideoIterator(this.catalog, ordering.ids);
+    }
+
+    @Override
+    public Iterator<Video> iterateMostFavorite() {
+        Ordering ordering = this.mostFavorite;
+        if (ordering == null) {
+            // videos enter the ordering with their first favorite, so every video is looked at
+            ordering = Ordering.repair(this.latest.mostFavorite, this.latest.allIds,
+                                       favorites(), HIGHEST_FIRST, true);
+            this.latest.mostFavorite = ordering;
+            this.mostFavorite = ordering;
+        }
+        return new VideoIterator(this.catalog, ordering.ids);
+    }
+
+    @Override
+    public Iterator<Video> iterateByRating(final int genre) {
+        Ordering ordering = this.byRating.get(genre);
+        if (ordering == null) {
+            Ordering previous = this.latest.byRating.get(genre);
+            int[] members = previous != null ? previous.ids
+                    : IntStream.of(this.latest.allIds)
+                            .filter(id -> this.catalog.hasGenre(id, genre)).toArray();
+            ordering = Ordering.repair(previous, members, ratings(), this.lowestRatedFirst,
+                                       false);
+            this.latest.byRating.set(genre, ordering);
+            this.byRating.set(genre, ordering);
+        }
+        return new VideoIterator(this.catalog, ordering.ids);
+    }
+
+    @Override
+    public int getNumGenres() {
+        return this.catalog.getNumGenres();
+    }
+
+    @Override
+    public int getPopularGenre(final int rank) {
+        int[] genres = this.popularGenres;
+        if (genres == null) {
+            genres = rankGenres();
+            this.popularGenres = genres;
+        }
+        return genres[rank];
+    }
+
+    /**
+     * counts the views of every genre and sorts the genres by them, then by tie order
+     * @return genre ids, most viewed first
+     */
+    private int[] rankGenres() {
+        int[] tieOrder = this.catalog.getGenreTieOrder();
+        int[] tieRank = new int[tieOrder.length];
+        for (int i = 0; i < tieOrder.length; i++) {
+            tieRank[tieOrder[i]] = i;
+        }
+        int[] views = new int[tieOrder.length];
+        for (int id = 0; id < this.catalog.size(); id++) {
+            int videoViews = this.snapshot.getNumViews(id);
+            // a genre listed twice by a video counts its views twice, like the live ranking
+            for (int genre : this.catalog.getGenresOf(id)) {
+                views[genre] += videoViews;
+            }
+        }
+        return Arrays.stream(tieOrder).boxed()
+                .sorted(Comparator.<Integer>comparingInt(genre -> views[genre]).reversed()
+                        .thenComparingInt(genre -> tieRank[genre]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return ratings of the catalog videos in the version, by video id
+     */
+    private double[] ratings() {
+        double[] keys = this.ratings;
+        if (keys == null) {
+            keys = new double[this.catalog.size()];
+            for (int id = 0; id < keys.length; id++) {
+                keys[id] = this.snapshot.getRating(id);
+            }
+            this.ratings = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * @return favorite counters of the catalog videos in the version, by video id
+     */
+    private double[] favorites() {
+        double[] keys = this.favorites;
+        if (keys == null) {
+            keys = new double[this.catalog.size()];
+            for (int id = 0; id < keys.length; id++) {
+                keys[id] = this.snapshot.getNumFavorites(id);
+            }
+            this.favorites = keys;
+        }
+        return keys;
+    }
+
+    /**
+     * order of video ids by the keys of a version
+     */
+    private interface IdOrder {
+        /**
+         * @param keys key of every catalog video, by video id
+         * @param id1 first video id
+         * @param id2 second video id
+         * @return negative if the first video comes first, positive if the second one does
+         */
+        int compare(double[] keys, int id1, int id2);
+    }
+
+    /**
+     * Video ids sorted by the keys of one version. Never changes once made
+     */
+    private static final class Ordering {
+        private final int[] ids;
+        private final double[] keys;
+
+        private Ordering(final int[] ids, final double[] keys) {
+            this.ids = ids;
+            this.keys = keys;
+        }
+
+        /**
+         * makes the ordering of some videos for new keys from an ordering of the same videos
+         * @param previous ordering made for older or newer keys, null to sort from scratch
+         * @param candidates videos that may be in the ordering
+         * @param keys key of every catalog video, by video id
+         * @param order order of the videos
+         * @param dropZero whether videos with a zero key are left out
+         * @return the ordering
+         */
+        static Ordering repair(final Ordering previous, final int[] candidates,
+                               final double[] keys, final IdOrder order,
+                               final boolean dropZero) {
+            if (previous == null) {
+                return new Ordering(sort(IntStream.of(candidates)
+                        .filter(id -> !dropZero || keys[id] != 0).toArray(), keys, order), keys);
+            }
+            boolean[] changed = new boolean[keys.length];
+            int[] moved = new int[candidates.length];
+            int numMoved = 0;
+            for (int id : candidates) {
+                if (Double.compare(previous.keys[id], keys[id]) != 0) {
+                    changed[id] = true;
+                    if (!dropZero || keys[id] != 0) {
+                        moved[numMoved++] = id;
+                    }
+                }
+            }
+            int[] kept = new int[previous.ids.length];
+            int numKept = 0;
+            for (int id : previous.ids) {
+                if (!changed[id]) {
+                    kept[numKept++] = id;
+                }
+            }
+            if (numKept == previous.ids.length && numMoved == 0) {
+                return new Ordering(previous.ids, keys);
+            }
+            return new Ordering(merge(Arrays.copyOf(kept, numKept),
+                                      sort(Arrays.copyOf(moved, numMoved), keys, order),
+                                      keys, order), keys);
+        }
+
+        /**
+         * @param ids video ids
+         * @param keys key of every catalog video, by video id
+         * @param order order of the videos
+         * @return the ids, sorted
+         */
+        private static int[] sort(final int[] ids, final double[] keys, final IdOrder order) {
+            return IntStream.of(ids).boxed()
+                    .sorted((id1, id2) -> order.compare(keys, id1, id2))
+                    .mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * @param ids1 sorted video ids
+         * @param ids2 other sorted video ids
+         * @param keys key of every catalog video, by video id
+         * @param order order of the videos
+         * @return every id of both arrays, sorted
+         */
+        private static int[] merge(final int[] ids1, final int[] ids2, final double[] keys,
+                                   final IdOrder order) {
+            int[] merged = new int[ids1.length + ids2.length];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < merged.length; k++) {
+                if (j == ids2.length
+                    || i < ids1.length && order.compare(keys, ids1[i], ids2[j]) < 0) {
+                    merged[k] = ids1[i++];
+                } else {
+                    merged[k] = ids2[j++];
+                }
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * iterator over the videos of an array of ids
+     */
+    private static final class VideoIterator implements Iterator<Video> {
+        private final Catalog catalog;
+        private final int[] ids;
+        private int next;
+
+        VideoIterator(final Catalog catalog, final int[] ids) {
+            this.catalog = catalog;
+            this.ids = ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.ids.length;
+        }
+
+        @Override
+        public Video next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.catalog.getVideo(this.ids[this.next++]);
+        }
+    }
+
+    /**
+     * The orderings made last, for any version, repaired by the next readers.
+     * Any ordering may be repaired to any version, older or newer, so the last one written
+     * wins without further checks
+     */
+    static final class Latest {
+        /**
+         * every catalog video id, in catalog order
+         */
+        private final int[] allIds;
+        private volatile Ordering bestRated;
+        private volatile Ordering mostFavorite;
+        private final AtomicReferenceArray<Ordering> byRating;
+
+        /**
+         * @param numVideos number of catalog videos
+         * @param numGenres number of genres of the catalog
+         */
+        Latest(final int numVideos, final int numGenres) {
+            this.allIds = IntStream.range(0, numVideos).toArray();
+            this.byRating = new AtomicReferenceArray<>(numGenres);
+        }
+    }
+}
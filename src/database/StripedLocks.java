@@ -0,0 +1,81 @@
+package database;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Locks of the concurrent repository mode.
+ * Users and videos are spread over a fixed number of lock stripes by id, so commands of users
+ * on different stripes run in parallel, and so do ratings of videos on different stripes,
+ * and the number of locks does not grow with the users or the videos.
+ * The gate is a read / write lock: commands share its read side, versions of the metrics
+ * take its write side.
+ */
+public final class StripedLocks implements AccessLocks {
+    private final ReentrantLock[] userStripes;
+    private final ReentrantLock[] videoStripes;
+    private final int stripeMask;
+    private final ReentrantReadWriteLock gate;
+
+    /**
+     * @param numStripes minimum number of user stripes, and of video stripes, rounded up to
+     *                   a power of two
+     */
+    public StripedLocks(final int numStripes) {
+        if (numStripes < 1) {
+            throw new IllegalArgumentException("the number of stripes must be positive");
+        }
+        int size = Integer.highestOneBit(numStripes);
+        if (size < numStripes) {
+            size <<= 1;
+        }
+        this.userStripes = new ReentrantLock[size];
+        this.videoStripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.userStripes[i] = new ReentrantLock();
+            this.videoStripes[i] = new ReentrantLock();
+        }
+        this.stripeMask = size - 1;
+        this.gate = new ReentrantReadWriteLock();
+    }
+
+    @Override
+    public void lockUser(final int userId) {
+        this.userStripes[userId & this.stripeMask].lock();
+    }
+
+    @Override
+    public void unlockUser(final int userId) {
+        this.userStripes[userId & this.stripeMask].unlock();
+    }
+
+    @Override
+    public void lockVideo(final int videoId) {
+        this.videoStripes[videoId & this.stripeMask].lock();
+    }
+
+    @Override
+    public void unlockVideo(final int videoId) {
+        this.videoStripes[videoId & this.stripeMask].unlock();
+    }
+
+    @Override
+    public void lockShared() {
+        this.gate.readLock().lock();
+    }
+
+    @Override
+    public void unlockShared() {
+        this.gate.readLock().unlock();
+    }
+
+    @Override
+    public void lockExclusive() {
+        this.gate.writeLock().lock();
+    }
+
+    @Override
+    public void unlockExclusive() {
+        this.gate.writeLock().unlock();
+    }
+}
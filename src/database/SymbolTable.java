@@ -0,0 +1,77 @@
+package database;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Assigns dense int ids to strings (titles, usernames, actor names, genres).
+ * Ids are given in insertion order starting from 0, so they can be used as array indexes.
+ */
+public final class SymbolTable {
+    /**
+     * id returned for strings that are not in the table
+     */
+    public static final int MISSING = -1;
+
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+
+    /**
+     * gets the id of a string, adding it to the table if needed
+     * @param name string to be encoded
+     * @return id of the string
+     */
+    public int intern(final String name) {
+        Integer id = this.ids.get(name);
+        if (id == null) {
+            id = this.names.size();
+            this.ids.put(name, id);
+            this.names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * gets the id of a string without adding it
+     * @param name string to be looked up
+     * @return id of the string or MISSING
+     */
+    public int lookup(final String name) {
+        Integer id = this.ids.get(name);
+        return id == null ? MISSING : id;
+    }
+
+    /**
+     * @param id id of a string
+     * @return the string with the given id
+     */
+    public String getName(final int id) {
+        return this.names.get(id);
+    }
+
+    public int size() {
+        return this.names.size();
+    }
+
+    /**
+     * writes the strings in id order
+     * @param out snapshot being written
+     * @throws IOException in case of exceptions to writing
+     */
+    void write(final DatabaseSnapshot.Writer out) throws IOException {
+        out.writeStrings(this.names);
+    }
+
+    /**
+     * @param in snapshot placed on a table written by {@link #write}
+     * @return the table, with the same ids
+     */
+    static SymbolTable read(final DatabaseSnapshot.Reader in) {
+        SymbolTable table = new SymbolTable();
+        for (String name : in.readStrings()) {
+            table.intern(name);
+        }
+        return table;
+    }
+}
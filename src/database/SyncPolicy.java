@@ -0,0 +1,20 @@
+package database;
+
+/**
+ * When the records of a {@link CommandLog} are forced to the storage device
+ */
+public enum SyncPolicy {
+    /**
+     * every record is written and forced on its own, one sync per command
+     */
+    EVERY_COMMAND,
+    /**
+     * records are written and forced by groups, one sync per group
+     */
+    GROUP,
+    /**
+     * records are written by groups and never forced, the operating system decides when
+     * they reach the device. They survive a crash of the process, not of the machine
+     */
+    NONE
+}
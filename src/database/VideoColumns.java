@@ -0,0 +1,201 @@
+package database;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Columnar store of the catalog video attributes.
+ * Every attribute used by filters, counters and sort keys is kept in a primitive array
+ * indexed by video id, so scans over many videos read memory sequentially instead of
+ * visiting every video object. The {@link models.video.Video} objects are views over
+ * these columns and keep only the attributes that are never scanned (title, cast, seasons).
+ * <p>
+ * In the concurrent mode the view and favorite counters are kept in {@link LongAdder}s, so
+ * commands on the same video add to them without a lock. The number of ratings and the
+ * rating change together under the lock of the video.
+ */
+public final class VideoColumns implements VideoMetrics {
+    private final int[] year;
+    /**
+     * bitmask of the genres, one bit for every genre id of the catalog, see
+     * {@link utils.Utils#genreBit}
+     */
+    private final long[] genres;
+    private final int[] duration;
+    private final int[] numViews;
+    private final int[] numFavorites;
+    /**
+     * view counters of the concurrent mode, null in the serial mode
+     */
+    private final LongAdder[] viewAdders;
+    /**
+     * favorite counters of the concurrent mode, null in the serial mode
+     */
+    private final LongAdder[] favoriteAdders;
+    private final int[] numRatings;
+    private final double[] rating;
+
+    /**
+     * @param capacity maximum number of videos
+     * @param concurrent whether the counters are changed by many threads at once
+     */
+    public VideoColumns(final int capacity, final boolean concurrent) {
+        this.year = new int[capacity];
+        this.genres = new long[capacity];
+        this.duration = new int[capacity];
+        this.numRatings = new int[capacity];
+        this.rating = new double[capacity];
+        if (concurrent) {
+            this.numViews = null;
+            this.numFavorites = null;
+            this.viewAdders = newAdders(capacity);
+            this.favoriteAdders = newAdders(capacity);
+        } else {
+            this.numViews = new int[capacity];
+            this.numFavorites = new int[capacity];
+            this.viewAdders = null;
+            this.favoriteAdders = null;
+        }
+    }
+
+    /**
+     * @param size number of counters
+     * @return new counters
+     */
+    private static LongAdder[] newAdders(final int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * sets the attributes that do not change after the catalog is loaded
+     * @param id video id
+     * @param videoYear release year
+     * @param videoGenres genre bitmask
+     * @param videoDuration duration of the video
+     */
+    public void setStatic(final int id, final int videoYear, final long videoGenres,
+                          final int videoDuration) {
+        this.year[id] = videoYear;
+        this.genres[id] = videoGenres;
+        this.duration[id] = videoDuration;
+    }
+
+    /**
+     * @param id video id
+     * @return release year
+     */
+    public int getYear(final int id) {
+        return this.year[id];
+    }
+
+    /**
+     * @param id video id
+     * @return genre bitmask
+     */
+    public long getGenres(final int id) {
+        return this.genres[id];
+    }
+
+    /**
+     * checks if a video has all the genre bits of a bitmask
+     * @param id video id
+     * @param genreMask bitmask of genres
+     * @return truth value
+     */
+    public boolean hasAllGenres(final int id, final long genreMask) {
+        return (this.genres[id] & genreMask) == genreMask;
+    }
+
+    /**
+     * @param id video id
+     * @return duration
+     */
+    public int getDuration(final int id) {
+        return this.duration[id];
+    }
+
+    /**
+     * sets the view and favorite counters of a video with no counters yet
+     * @param id video id
+     * @param views number of views
+     * @param favorites number of times the video was added to favorite
+     */
+    public void setCounters(final int id, final int views, final int favorites) {
+        if (this.viewAdders == null) {
+            this.numViews[id] = views;
+            this.numFavorites[id] = favorites;
+        } else {
+            this.viewAdders[id].add(views);
+            this.favoriteAdders[id].add(favorites);
+        }
+    }
+
+    @Override
+    public int getNumViews(final int id) {
+        return this.viewAdders == null ? this.numViews[id] : this.viewAdders[id].intValue();
+    }
+
+    /**
+     * adds views to a video
+     * @param id video id
+     * @param views number of views
+     */
+    public void addNumViews(final int id, final int views) {
+        if (this.viewAdders == null) {
+            this.numViews[id] += views;
+        } else {
+            this.viewAdders[id].add(views);
+        }
+    }
+
+    @Override
+    public int getNumFavorites(final int id) {
+        return this.favoriteAdders == null ? this.numFavorites[id]
+                : this.favoriteAdders[id].intValue();
+    }
+
+    /**
+     * increments the number of times a video was added to favorite
+     * @param id video id
+     */
+    public void incrementNumFavorites(final int id) {
+        if (this.favoriteAdders == null) {
+            this.numFavorites[id]++;
+        } else {
+            this.favoriteAdders[id].increment();
+        }
+    }
+
+    /**
+     * @param id video id
+     * @return number of ratings
+     */
+    public int getNumRatings(final int id) {
+        return this.numRatings[id];
+    }
+
+    /**
+     * increments the number of ratings of a video
+     * @param id video id
+     * @return the new number of ratings
+     */
+    public int incrementNumRatings(final int id) {
+        return ++this.numRatings[id];
+    }
+
+    @Override
+    public double getRating(final int id) {
+        return this.rating[id];
+    }
+
+    /**
+     * @param id video id
+     * @param videoRating new rating
+     */
+    public void setRating(final int id, final double videoRating) {
+        this.rating[id] = videoRating;
+    }
+}
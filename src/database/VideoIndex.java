@@ -0,0 +1,238 @@
+package database;
+
+import common.Constants;
+import models.video.Video;
+import utils.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Secondary indexes over a group of videos (the movies or the shows of the catalog).
+ * Every year and every genre maps to the sorted ids of its videos. A filtered search
+ * starts from the shortest list of the requested year and genres and checks the other
+ * conditions on it, so its cost depends on the size of that list and not on the size
+ * of the catalog.
+ * The group also has a leaderboard for every metric that changes with the commands,
+ * used by the queries without filters.
+ */
+public final class VideoIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] allIds;
+    private final Map<Integer, int[]> byYear;
+    /**
+     * video ids by genre id
+     */
+    private final int[][] byGenre;
+
+    private final Leaderboard<Video> viewsRanking;
+    private final Leaderboard<Video> favoritesRanking;
+    private final Leaderboard<Video> ratingRanking;
+
+    /**
+     * @param catalog catalog of all videos
+     * @param ids ids of the indexed videos
+     */
+    public VideoIndex(final Catalog catalog, final int[] ids) {
+        this.allIds = Arrays.stream(ids).sorted().distinct().toArray();
+
+        Map<Integer, List<Integer>> years = new HashMap<>();
+        List<List<Integer>> genres = new ArrayList<>();
+        for (int i = 0; i < catalog.getNumGenres(); i++) {
+            genres.add(new ArrayList<>());
+        }
+        VideoColumns columns = catalog.getColumns();
+        for (int id : this.allIds) {
+            years.computeIfAbsent(columns.getYear(id), year -> new ArrayList<>()).add(id);
+            for (int genre : catalog.getGenresOf(id)) {
+                List<Integer> genreIds = genres.get(genre);
+                // a genre can be listed twice by a video
+                if (genreIds.isEmpty() || genreIds.get(genreIds.size() - 1) != id) {
+                    genreIds.add(id);
+                }
+            }
+        }
+
+        this.byYear = new HashMap<>();
+        for (Map.Entry<Integer, List<Integer>> entry : years.entrySet()) {
+            this.byYear.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        this.byGenre = new int[genres.size()][];
+        for (int genre = 0; genre < this.byGenre.length; genre++) {
+            this.byGenre[genre] = toArray(genres.get(genre));
+        }
+
+        this.viewsRanking = new Leaderboard<>(Video.viewsOrder(columns),
+                                              video -> video.getNumViews() != 0);
+        this.favoritesRanking = new Leaderboard<>(Video.favoritesOrder(columns),
+                                                  video -> video.getNumFavorites() != 0);
+        this.ratingRanking = new Leaderboard<>(Comparator.<Video>naturalOrder(),
+                                               video -> video.getRating() != 0);
+    }
+
+    /**
+     * reads the indexes written by {@link #write}
+     * @param in snapshot placed on the indexes
+     * @param columns counters of the catalog videos, read by the leaderboards
+     */
+    VideoIndex(final DatabaseSnapshot.Reader in, final VideoColumns columns) {
+        this.allIds = in.readInts();
+        int numYears = in.readInt();
+        this.byYear = new HashMap<>();
+        for (int i = 0; i < numYears; i++) {
+            int year = in.readInt();
+            this.byYear.put(year, in.readInts());
+        }
+        this.byGenre = new int[in.readInt()][];
+        for (int genre = 0; genre < this.byGenre.length; genre++) {
+            this.byGenre[genre] = in.readInts();
+        }
+
+        this.viewsRanking = new Leaderboard<>(Video.viewsOrder(columns),
+                                              video -> video.getNumViews() != 0);
+        this.favoritesRanking = new Leaderboard<>(Video.favoritesOrder(columns),
+                                                  video -> video.getNumFavorites() != 0);
+        this.ratingRanking = new Leaderboard<>(Comparator.<Video>naturalOrder(),
+                                               video -> video.getRating() != 0);
+    }
+
+    /**
+     * writes the id lists of the group, its years and its genres. The leaderboards are
+     * built again from the counters
+     * @param out snapshot being written
+     * @throws IOException in case of exceptions to writing
+     */
+    void write(final DatabaseSnapshot.Writer out) throws IOException {
+        out.writeInts(this.allIds);
+        out.writeInt(this.byYear.size());
+        for (Map.Entry<Integer, int[]> entry : new TreeMap<>(this.byYear).entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeInts(entry.getValue());
+        }
+        out.writeInt(this.byGenre.length);
+        for (int[] ids : this.byGenre) {
+            out.writeInts(ids);
+        }
+    }
+
+    /**
+     * puts every video of the group on the leaderboards
+     * @param catalog catalog of all videos
+     */
+    void buildRankings(final Catalog catalog) {
+        for (int id : this.allIds) {
+            Video video = catalog.getVideo(id);
+            this.viewsRanking.add(video);
+            this.favoritesRanking.add(video);
+            this.ratingRanking.add(video);
+        }
+    }
+
+    public Leaderboard<Video> getViewsRanking() {
+        return viewsRanking;
+    }
+
+    public Leaderboard<Video> getFavoritesRanking() {
+        return favoritesRanking;
+    }
+
+    public Leaderboard<Video> getRatingRanking() {
+        return ratingRanking;
+    }
+
+    /**
+     * gets the leaderboard used by a query criteria
+     * @param criteria query criteria
+     * @return the leaderboard, or null if the criteria has none
+     */
+    public Leaderboard<Video> getLeaderboard(final String criteria) {
+        return switch (criteria) {
+            case Constants.MOST_VIEWED -> this.viewsRanking;
+            case Constants.FAVORITE -> this.favoritesRanking;
+            case Constants.RATINGS -> this.ratingRanking;
+            default -> null;
+        };
+    }
+
+    /**
+     * @param list list of ids
+     * @return array of ids
+     */
+    private static int[] toArray(final List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * @return ids of all the indexed videos, sorted
+     */
+    public int[] getAllIds() {
+        return allIds;
+    }
+
+    /**
+     * gets the videos released in a year
+     * @param year release year
+     * @return sorted video ids
+     */
+    public int[] getByYear(final int year) {
+        return this.byYear.getOrDefault(year, EMPTY);
+    }
+
+    /**
+     * gets the videos of a genre
+     * @param genre genre id
+     * @return sorted video ids
+     */
+    public int[] getByGenre(final int genre) {
+        return this.byGenre[genre];
+    }
+
+    /**
+     * finds the videos matching all the given conditions
+     * @param catalog catalog of all videos
+     * @param hasYear whether the year is filtered
+     * @param year release year
+     * @param genres ids of the genres that every video must have
+     * @return sorted ids of the matching videos
+     */
+    public int[] find(final Catalog catalog, final boolean hasYear, final int year,
+                      final int[] genres) {
+        if (!hasYear && genres.length == 0) {
+            return this.allIds;
+        }
+
+        int[] candidates = hasYear ? getByYear(year) : null;
+        long genreMask = 0;
+        boolean sharedBit = false;
+        for (int genre : genres) {
+            genreMask |= Utils.genreBit(genre);
+            sharedBit |= genre >= Utils.SHARED_GENRE_BIT;
+            if (candidates == null || getByGenre(genre).length < candidates.length) {
+                candidates = getByGenre(genre);
+            }
+        }
+
+        VideoColumns columns = catalog.getColumns();
+        int[] result = new int[candidates.length];
+        int size = 0;
+        for (int id : candidates) {
+            // the shared bit only tells that the video may have the genre
+            if ((!hasYear || columns.getYear(id) == year) && columns.hasAllGenres(id, genreMask)
+                && (!sharedBit || catalog.hasAllGenres(id, genres))) {
+                result[size++] = id;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
@@ -0,0 +1,26 @@
+package database;
+
+/**
+ * Read access to the counters of the catalog videos, by video id.
+ * Implemented by the live {@link VideoColumns} and by the pinned versions of
+ * {@link MetricVersions}, so the queries run the same way on both.
+ */
+public interface VideoMetrics {
+    /**
+     * @param id video id
+     * @return number of views
+     */
+    int getNumViews(int id);
+
+    /**
+     * @param id video id
+     * @return number of times added to favorite
+     */
+    int getNumFavorites(int id);
+
+    /**
+     * @param id video id
+     * @return rating
+     */
+    double getRating(int id);
+}
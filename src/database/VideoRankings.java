@@ -0,0 +1,40 @@
+package database;
+
+import models.video.Video;
+
+import java.util.Iterator;
+
+/**
+ * Orderings of the catalog videos and genres read by the recommendations.
+ * Implemented by the live {@link Catalog}, whose leaderboards follow every command in the
+ * serial mode, and by {@link SnapshotRankings}, sorted from a pinned version of the metrics.
+ */
+public interface VideoRankings {
+    /**
+     * @return every catalog video, best rated first, then in catalog order
+     */
+    Iterator<Video> iterateBestRated();
+
+    /**
+     * @return videos added to favorite at least once, most favorite first, then in catalog
+     * order
+     */
+    Iterator<Video> iterateMostFavorite();
+
+    /**
+     * @param genre genre id
+     * @return catalog videos of the genre sorted by rating, then by title
+     */
+    Iterator<Video> iterateByRating(int genre);
+
+    /**
+     * @return number of genres of the catalog
+     */
+    int getNumGenres();
+
+    /**
+     * @param rank position in the ranking of the genres by number of views
+     * @return id of the genre on that position
+     */
+    int getPopularGenre(int rank);
+}
@@ -0,0 +1,19 @@
+package fileio;
+
+/**
+ * Receives the parts of an input file as soon as they are decoded,
+ * see {@link StreamingInputLoader#readData(InputListener)}.
+ */
+public interface InputListener {
+    /**
+     * called once, with the database lists and no actions
+     * @param database database of the file
+     */
+    void databaseRead(Input database);
+
+    /**
+     * called for every action, in file order, after the database
+     * @param action decoded action
+     */
+    void actionRead(ActionInputData action);
+}
@@ -0,0 +1,18 @@
+package fileio;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the action results.
+ * Results are handed over one by one, as soon as the action that produced them finished.
+ */
+public interface ResultSink extends Closeable {
+    /**
+     * writes the result of an action
+     * @param id id of the action
+     * @param message message to be written
+     * @throws IOException in case of exceptions to writing
+     */
+    void write(int id, String message) throws IOException;
+}
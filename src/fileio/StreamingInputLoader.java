@@ -0,0 +1,642 @@
+package fileio;
+
+import actor.ActorsAwards;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import common.Constants;
+import entertainment.Season;
+import utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token based replacement for {@link InputLoader}.
+ * The test file is read in a single pass with the jackson streaming parser, so no
+ * intermediate JSON tree is built: every record is decoded straight into its input object.
+ * The produced {@link Input} is the same as the one given by {@link InputLoader#readData()}.
+ * The file can also be streamed to an {@link InputListener}, so the actions are used while
+ * the rest of the file is still being read.
+ */
+public final class StreamingInputLoader {
+    /**
+     * The path to the input file
+     */
+    private final String inputPath;
+
+    /**
+     * sizes of the database lists. The default query limit of an action depends on them,
+     * so actions met before the database are kept as raw fields until it is parsed.
+     */
+    private int numActors;
+    private int numUsers;
+    private int numVideos;
+    private boolean databaseRead;
+
+    public StreamingInputLoader(final String inputPath) {
+        this.inputPath = inputPath;
+    }
+
+    public String getInputPath() {
+        return inputPath;
+    }
+
+    /**
+     * The method reads the database
+     * @return an Input object
+     */
+    public Input readData() {
+        Input[] database = new Input[1];
+        List<ActionInputData> actions = new ArrayList<>();
+        boolean hasActions = readData(new InputListener() {
+            @Override
+            public void databaseRead(final Input input) {
+                database[0] = input;
+            }
+
+            @Override
+            public void actionRead(final ActionInputData action) {
+                actions.add(action);
+            }
+        });
+
+        if (database[0].getActors() == null) {
+            System.out.println("NU EXISTA ACTORI");
+        }
+        if (database[0].getUsers() == null) {
+            System.out.println("NU EXISTA UTILIZATORI");
+        }
+        if (database[0].getSerials() == null) {
+            System.out.println("NU EXISTA SERIALE");
+        }
+        if (database[0].getMovies() == null) {
+            System.out.println("NU EXISTA FILME");
+        }
+        if (!hasActions) {
+            System.out.println("NU EXISTA COMENZI");
+        }
+
+        return new Input(database[0].getActors(), database[0].getUsers(),
+                         hasActions ? actions : null, database[0].getMovies(),
+                         database[0].getSerials());
+    }
+
+    /**
+     * Reads the file and hands every part over as soon as it is decoded: the database once,
+     * then the actions in the order of {@link #readData()}. Actions met before the database
+     * are kept until it is read. The database is always handed over, even if the file has
+     * none or cannot be read to the end
+     * @param listener receiver of the database and of the actions
+     * @return whether the file has a list of actions
+     */
+    public boolean readData(final InputListener listener) {
+        List<ActorInputData> actors = null;
+        List<UserInputData> users = null;
+        List<MovieInputData> movies = null;
+        List<SerialInputData> serials = null;
+        boolean hasActions = false;
+        List<ActionFields> pendingActions = new ArrayList<>();
+        this.databaseRead = false;
+
+        JsonFactory factory = new JsonFactory();
+        try (JsonParser parser = factory.createParser(new File(inputPath))) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals(Constants.DATABASE) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String list = parser.getCurrentName();
+                        JsonToken listToken = parser.nextToken();
+                        switch (list) {
+                            case Constants.ACTORS -> actors = readActors(parser, listToken);
+                            case Constants.USERS -> users = readUsers(parser, listToken);
+                            case Constants.MOVIES -> movies = readMovies(parser, listToken);
+                            case Constants.SHOWS -> serials = readSerials(parser, listToken);
+                            default -> parser.skipChildren();
+                        }
+                    }
+                    this.numActors = actors == null ? 0 : actors.size();
+                    this.numUsers = users == null ? 0 : users.size();
+                    this.numVideos = (movies == null ? 0 : movies.size())
+                            + (serials == null ? 0 : serials.size());
+                    this.databaseRead = true;
+                    listener.databaseRead(new Input(actors, users, null, movies, serials));
+                    // actions placed before the database in the file
+                    emit(pendingActions, listener);
+                } else if (field.equals(Constants.ACTIONS) && token == JsonToken.START_ARRAY) {
+                    hasActions = true;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        ActionFields fields = readActionFields(parser);
+                        if (this.databaseRead) {
+                            fields.emit(listener, defaultNumber());
+                        } else {
+                            pendingActions.add(fields);
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (!this.databaseRead) {
+            listener.databaseRead(new Input(actors, users, null, movies, serials));
+            emit(pendingActions, listener);
+        }
+        return hasActions;
+    }
+
+    /**
+     * hands over the actions kept until the database was read
+     * @param pendingActions raw fields of the actions, emptied by this method
+     * @param listener receiver of the actions
+     */
+    private void emit(final List<ActionFields> pendingActions, final InputListener listener) {
+        for (ActionFields fields : pendingActions) {
+            fields.emit(listener, defaultNumber());
+        }
+        pendingActions.clear();
+    }
+
+    /**
+     * Reads only the actions of a file, for inputs whose database comes from somewhere else
+     * (for example a binary snapshot). A database placed before the actions is skipped
+     * without decoding any record, and the file is not read past the actions
+     * @param defaultNumber query limit used by actions without a number
+     * @return list of actions, or null if the file has none
+     */
+    public List<ActionInputData> readActions(final int defaultNumber) {
+        List<ActionInputData> actions = null;
+        JsonFactory factory = new JsonFactory();
+        try (JsonParser parser = factory.createParser(new File(inputPath))) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (field.equals(Constants.ACTIONS) && token == JsonToken.START_ARRAY) {
+                    actions = new ArrayList<>();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readActionFields(parser).addTo(actions, defaultNumber);
+                    }
+                    break;
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        if (actions == null) {
+            System.out.println("NU EXISTA COMENZI");
+        }
+        return actions;
+    }
+
+    /**
+     * default query limit, same as the one used by {@link InputLoader}
+     * @return the biggest of the database list sizes
+     */
+    private int defaultNumber() {
+        return Math.max(Math.max(this.numVideos, this.numUsers), this.numActors);
+    }
+
+    /**
+     * checks that the parser is placed on the expected token
+     * @param token current token
+     * @param expected expected token
+     * @throws IOException if the file does not have the expected structure
+     */
+    private static void expect(final JsonToken token,
+                               final JsonToken expected) throws IOException {
+        if (token != expected) {
+            throw new IOException("expected " + expected + " but found " + token);
+        }
+    }
+
+    /**
+     * reads a scalar value as string, numbers included
+     * @param parser parser placed on the value
+     * @return the value or null
+     * @throws IOException in case of exceptions to reading
+     */
+    private static String readString(final JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken().isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getText();
+    }
+
+    /**
+     * reads an int that can be written either as a number or as a string
+     * @param parser parser placed on the value
+     * @return the int value
+     * @throws IOException in case of exceptions to reading
+     */
+    private static int readInt(final JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        }
+        return Integer.parseInt(parser.getText());
+    }
+
+    /**
+     * reads an array of strings
+     * @param parser parser placed on the start of the array
+     * @return list of strings, null if the value is null
+     * @throws IOException in case of exceptions to reading
+     */
+    private static ArrayList<String> readStringArray(final JsonParser parser)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        ArrayList<String> array = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            array.add(readString(parser));
+        }
+        return array;
+    }
+
+    /**
+     * reads the actor list
+     * @param parser parser placed on the start of the list
+     * @param token current token
+     * @return list of actors, null if the list is missing
+     * @throws IOException in case of exceptions to reading
+     */
+    private static List<ActorInputData> readActors(final JsonParser parser,
+                                                   final JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<ActorInputData> actors = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String name = null;
+            String description = null;
+            ArrayList<String> filmography = null;
+            Map<ActorsAwards, Integer> awards = new LinkedHashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case Constants.NAME -> name = readString(parser);
+                    case Constants.DESCRIPTION -> description = readString(parser);
+                    case Constants.FILMOGRAPHY -> filmography = readStringArray(parser);
+                    case Constants.AWARDS -> readAwards(parser, awards);
+                    default -> parser.skipChildren();
+                }
+            }
+            actors.add(new ActorInputData(name, description, filmography, awards));
+        }
+        return actors;
+    }
+
+    /**
+     * reads the awards of an actor
+     * @param parser parser placed on the start of the award list
+     * @param awards map where the awards are put
+     * @throws IOException in case of exceptions to reading
+     */
+    private static void readAwards(final JsonParser parser,
+                                   final Map<ActorsAwards, Integer> awards) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String awardType = null;
+            int numAwards = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case Constants.AWARD_TYPE -> awardType = readString(parser);
+                    case Constants.NUMBER_OF_AWARDS -> numAwards = readInt(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            awards.put(Utils.stringToAwards(awardType), numAwards);
+        }
+    }
+
+    /**
+     * reads the user list
+     * @param parser parser placed on the start of the list
+     * @param token current token
+     * @return list of users, null if the list is missing
+     * @throws IOException in case of exceptions to reading
+     */
+    private static List<UserInputData> readUsers(final JsonParser parser,
+                                                 final JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<UserInputData> users = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String username = null;
+            String subscription = null;
+            Map<String, Integer> history = null;
+            ArrayList<String> favorites = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case Constants.USERNAME -> username = readString(parser);
+                    case Constants.SUBSCRIPTION -> subscription = readString(parser);
+                    case Constants.HISTORY -> history = readHistory(parser);
+                    case Constants.FAVORITE_MOVIES -> favorites = readStringArray(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (history == null) {
+                System.out.println("NU ESTE VIZIONAT NICIUN FILM");
+                history = new LinkedHashMap<>();
+            }
+            users.add(new UserInputData(username, subscription, history, favorites));
+        }
+        return users;
+    }
+
+    /**
+     * reads the view history of an user
+     * @param parser parser placed on the start of the history
+     * @return map of viewed videos, null if the history is missing
+     * @throws IOException in case of exceptions to reading
+     */
+    private static Map<String, Integer> readHistory(final JsonParser parser)
+            throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        Map<String, Integer> history = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String title = null;
+            int numViews = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case Constants.NAME -> title = readString(parser);
+                    case Constants.NUMBER_VIEWS -> numViews = readInt(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            history.put(title, numViews);
+        }
+        return history;
+    }
+
+    /**
+     * reads the movie list
+     * @param parser parser placed on the start of the list
+     * @param token current token
+     * @return list of movies, null if the list is missing
+     * @throws IOException in case of exceptions to reading
+     */
+    private static List<MovieInputData> readMovies(final JsonParser parser,
+                                                   final JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<MovieInputData> movies = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String title = null;
+            ArrayList<String> cast = null;
+            ArrayList<String> genres = null;
+            int year = 0;
+            int duration = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case Constants.NAME -> title = readString(parser);
+                    case Constants.ACTORS -> cast = readStringArray(parser);
+                    case Constants.GENRES -> genres = readStringArray(parser);
+                    case Constants.YEAR -> year = readInt(parser);
+                    case Constants.DURATION -> duration = readInt(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            movies.add(new MovieInputData(title, cast, genres, year, duration));
+        }
+        return movies;
+    }
+
+    /**
+     * reads the show list
+     * @param parser parser placed on the start of the list
+     * @param token current token
+     * @return list of shows, null if the list is missing
+     * @throws IOException in case of exceptions to reading
+     */
+    private static List<SerialInputData> readSerials(final JsonParser parser,
+                                                     final JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        List<SerialInputData> serials = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String title = null;
+            ArrayList<String> cast = null;
+            ArrayList<String> genres = null;
+            ArrayList<Season> seasons = null;
+            int numberOfSeasons = 0;
+            int year = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case Constants.NAME -> title = readString(parser);
+                    case Constants.CAST -> cast = readStringArray(parser);
+                    case Constants.GENRES -> genres = readStringArray(parser);
+                    case Constants.NUMBER_OF_SEASONS -> numberOfSeasons = readInt(parser);
+                    case Constants.SEASONS -> seasons = readSeasons(parser);
+                    case Constants.YEAR -> year = readInt(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            serials.add(new SerialInputData(title, cast, genres, numberOfSeasons, seasons, year));
+        }
+        return serials;
+    }
+
+    /**
+     * reads the seasons of a show
+     * @param parser parser placed on the start of the season list
+     * @return list of seasons, null if the list is missing
+     * @throws IOException in case of exceptions to reading
+     */
+    private static ArrayList<Season> readSeasons(final JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        ArrayList<Season> seasons = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int currentSeason = 0;
+            int duration = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case Constants.CURRENT_SEASON -> currentSeason = readInt(parser);
+                    case Constants.DURATION -> duration = readInt(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+            seasons.add(new Season(currentSeason, duration));
+        }
+        return seasons;
+    }
+
+    /**
+     * reads the fields of a single action
+     * @param parser parser placed on the start of the action
+     * @return raw fields of the action
+     * @throws IOException in case of exceptions to reading
+     */
+    private static ActionFields readActionFields(final JsonParser parser) throws IOException {
+        ActionFields fields = new ActionFields();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            switch (field) {
+                case Constants.ID -> fields.actionId = readInt(parser);
+                case Constants.ACTION_TYPE -> fields.actionType = readString(parser);
+                case Constants.TYPE -> fields.type = readString(parser);
+                case Constants.USER -> fields.user = readString(parser);
+                case Constants.USERNAME -> fields.username = readString(parser);
+                case Constants.TITLE -> fields.title = readString(parser);
+                case Constants.OBJECT -> fields.objectType = readString(parser);
+                case Constants.SORT -> fields.sortType = readString(parser);
+                case Constants.CRITERIA -> fields.criteria = readString(parser);
+                case Constants.GENRE -> fields.genre = readString(parser);
+                case Constants.SEASON -> fields.season = readInt(parser);
+                case Constants.GRADE -> fields.grade = Double.parseDouble(parser.getText());
+                case Constants.NUMBER -> {
+                    fields.number = readInt(parser);
+                    fields.hasNumber = true;
+                }
+                case Constants.FILTERS -> readFilters(parser, fields);
+                default -> parser.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * reads the filters of a query
+     * @param parser parser placed on the start of the filters
+     * @param fields action fields where the filters are put
+     * @throws IOException in case of exceptions to reading
+     */
+    private static void readFilters(final JsonParser parser,
+                                    final ActionFields fields) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case Constants.GENRE -> fields.filterGenre = readString(parser);
+                case Constants.YEAR -> fields.filterYear = readString(parser);
+                case Constants.AWARDS -> fields.awards = readStringArray(parser);
+                case Constants.WORDS -> fields.words = readStringArray(parser);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Raw fields of an action, kept until the action object can be built
+     */
+    private static final class ActionFields {
+        private int actionId;
+        private String actionType;
+        private String type;
+        private String user;
+        private String username;
+        private String title;
+        private String objectType;
+        private String sortType;
+        private String criteria;
+        private String genre;
+        private String filterGenre;
+        private String filterYear;
+        private List<String> awards;
+        private List<String> words;
+        private double grade;
+        private int season;
+        private int number;
+        private boolean hasNumber;
+
+        /**
+         * builds the action and adds it to the list
+         * @param actions list of actions
+         * @param defaultNumber query limit used when the action has none
+         */
+        void addTo(final List<ActionInputData> actions, final int defaultNumber) {
+            ActionInputData action = build(defaultNumber);
+            if (action != null) {
+                actions.add(action);
+            }
+        }
+
+        /**
+         * builds the action and hands it over
+         * @param listener receiver of the action
+         * @param defaultNumber query limit used when the action has none
+         */
+        void emit(final InputListener listener, final int defaultNumber) {
+            ActionInputData action = build(defaultNumber);
+            if (action != null) {
+                listener.actionRead(action);
+            }
+        }
+
+        /**
+         * @param defaultNumber query limit used when the action has none
+         * @return the action, null if its type is unknown
+         */
+        private ActionInputData build(final int defaultNumber) {
+            if (actionType == null) {
+                return null;
+            }
+            return switch (actionType) {
+                case Constants.COMMAND -> new ActionInputData(actionId, actionType, type, user,
+                        title, grade, season);
+                case Constants.QUERY -> new ActionInputData(actionId, actionType, objectType,
+                        filterGenre, sortType, criteria, filterYear,
+                        hasNumber ? number : defaultNumber, words, awards);
+                case Constants.RECOMMENDATION -> new ActionInputData(actionId, actionType, type,
+                        username, genre);
+                default -> null;
+            };
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package fileio;
+
+import common.Constants;
+import org.json.simple.JSONValue;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the output JSON array incrementally.
+ * Every result is serialized as soon as it is produced, through a buffered UTF-8 writer over
+ * a file channel, and the array brackets are written at the start and at the end. The text
+ * is the same as the one given by {@link Writer#closeJSON}, but memory stays constant and
+ * the results already written are visible in the file during long runs.
+ */
+public final class StreamingWriter implements ResultSink {
+    /**
+     * number of results after which the buffer is pushed to the file
+     */
+    private static final int FLUSH_INTERVAL = 1024;
+
+    private final BufferedWriter file;
+    private boolean first;
+    private int unflushed;
+
+    public StreamingWriter(final String path) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.file = new BufferedWriter(Channels.newWriter(channel,
+                StandardCharsets.UTF_8.newEncoder(), -1));
+        this.file.write('[');
+        this.first = true;
+        this.unflushed = 0;
+    }
+
+    /**
+     * writes a {id, message} object as the next element of the array
+     * @param id of the action
+     * @param message to be written
+     * @throws IOException in case of exceptions to writing
+     */
+    @Override
+    public void write(final int id, final String message) throws IOException {
+        if (!this.first) {
+            this.file.write(',');
+        }
+        this.first = false;
+
+        this.file.write("{\"" + Constants.ID_STRING + "\":");
+        this.file.write(Integer.toString(id));
+        this.file.write(",\"" + Constants.MESSAGE + "\":");
+        if (message == null) {
+            this.file.write("null");
+        } else {
+            this.file.write('"');
+            this.file.write(JSONValue.escape(message));
+            this.file.write('"');
+        }
+        this.file.write('}');
+
+        if (++this.unflushed == FLUSH_INTERVAL) {
+            this.file.flush();
+            this.unflushed = 0;
+        }
+    }
+
+    /**
+     * closes the array and the file
+     * @throws IOException in case of exceptions to writing
+     */
+    @Override
+    public void close() throws IOException {
+        this.file.write(']');
+        this.file.close();
+    }
+}
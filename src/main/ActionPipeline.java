@@ -0,0 +1,250 @@
+package main;
+
+import database.AccessLocks;
+import database.CommandLog;
+import database.Repository;
+import fileio.ActionInputData;
+import fileio.Input;
+import fileio.InputListener;
+import fileio.StreamingInputLoader;
+import fileio.StreamingWriter;
+import utils.SpscQueue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a test file as a pipeline of three threads, so reading and writing the files overlap
+ * with running the actions.
+ * A parser thread decodes the file and hands the database over as soon as it is read, then
+ * every action; the calling thread builds the repository and runs the actions in order; a
+ * writer thread serializes the results. The stages are connected by bounded {@link SpscQueue}s,
+ * so a stage that runs ahead waits for the next one instead of filling the memory.
+ * The output is the same as the one of {@link Main#action}. With a {@link CommandLog}, results
+ * are handed to the writer only once the commands before them are committed to the log.
+ * <p>
+ * Any throwable of a stage, errors included, is recorded as the failure of the pipeline and
+ * thrown again by {@link #run}. Once a failure is recorded the runner stops, the parser gives
+ * up waiting for room in the queue of actions and the writer only drains the results.
+ */
+public final class ActionPipeline {
+    /**
+     * marks the end of the actions
+     */
+    private static final ActionInputData END_OF_ACTIONS = new ActionInputData(-1, null, null,
+            null, null, 0.0, 0);
+    /**
+     * marks the end of the results
+     */
+    private static final Result END_OF_RESULTS = new Result(-1, null);
+
+    private final int queueCapacity;
+
+    /**
+     * @param queueCapacity capacity of the queues between the stages
+     */
+    public ActionPipeline(final int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Result of an action, waiting to be written
+     */
+    private static final class Result {
+        private final int id;
+        private final String message;
+
+        Result(final int id, final String message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
+
+    /**
+     * runs the actions of a file and writes their results
+     * @param inputPath input file
+     * @param outputPath output file
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    public void run(final String inputPath, final String outputPath) throws IOException {
+        run(inputPath, outputPath, null);
+    }
+
+    /**
+     * runs the actions of a file, logging the commands, and writes their results
+     * @param inputPath input file
+     * @param outputPath output file
+     * @param commandLog log read before the actions and extended by every new command,
+     *                   null if the commands are not logged
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    public void run(final String inputPath, final String outputPath,
+                    final CommandLog commandLog) throws IOException {
+        SpscQueue<ActionInputData> actions = new SpscQueue<>(this.queueCapacity);
+        SpscQueue<Result> results = new SpscQueue<>(this.queueCapacity);
+        CompletableFuture<Input> database = new CompletableFuture<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        BooleanSupplier failed = () -> failure.get() != null;
+
+        Thread parser = new Thread(() -> {
+            try {
+                new StreamingInputLoader(inputPath).readData(new InputListener() {
+                    @Override
+                    public void databaseRead(final Input input) {
+                        database.complete(input);
+                    }
+
+                    @Override
+                    public void actionRead(final ActionInputData action) {
+                        if (!actions.put(action, failed)) {
+                            throw new CancellationException("the pipeline failed");
+                        }
+                    }
+                });
+            } catch (Throwable e) {
+                // a cancellation comes after the failure that caused it, so it is not kept
+                failure.compareAndSet(null, e);
+            } finally {
+                // does nothing if the database was handed over
+                database.completeExceptionally(new IllegalStateException("no database read"));
+                actions.put(END_OF_ACTIONS, failed);
+            }
+        }, "action-parser");
+
+        try (StreamingWriter fileWriter = new StreamingWriter(outputPath)) {
+            Thread writer = new Thread(() -> {
+                for (Result result = results.take(); result != END_OF_RESULTS;
+                     result = results.take()) {
+                    // after a failure the results are only drained, so the runner never waits
+                    if (failure.get() == null) {
+                        try {
+                            fileWriter.write(result.id, result.message);
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    }
+                }
+            }, "result-writer");
+            BooleanSupplier writerStopped = () -> !writer.isAlive();
+
+            parser.start();
+            writer.start();
+            try {
+                runActions(database, actions, results, failure, commandLog, writerStopped);
+            } finally {
+                results.put(END_OF_RESULTS, writerStopped);
+                join(writer);
+                join(parser);
+            }
+        }
+        rethrow(failure.get());
+    }
+
+    /**
+     * runs the actions handed over by the parser and passes their results to the writer,
+     * until the end of the actions or the first failure of the pipeline
+     * @param database database of the file, given by the parser
+     * @param actions queue of actions
+     * @param results queue of results
+     * @param failure first failure of the pipeline
+     * @param commandLog log of the commands, may be null
+     * @param writerStopped true once the writer thread is gone, so its queue is not waited for
+     */
+    private static void runActions(final CompletableFuture<Input> database,
+                                   final SpscQueue<ActionInputData> actions,
+                                   final SpscQueue<Result> results,
+                                   final AtomicReference<Throwable> failure,
+                                   final CommandLog commandLog,
+                                   final BooleanSupplier writerStopped) {
+        BooleanSupplier failed = () -> failure.get() != null;
+        try {
+            Repository repository = new Repository(database.join(), null, AccessLocks.NONE,
+                                                   commandLog);
+            // results waiting for their commands to be committed
+            List<Result> held = new ArrayList<>();
+
+            while (failure.get() == null) {
+                ActionInputData action = actions.take(failed);
+                if (action == null || action == END_OF_ACTIONS) {
+                    break;
+                }
+                String message = repository.execute(action);
+                if (message != null) {
+                    held.add(new Result(action.getActionId(), message));
+                }
+                if (commandLog == null || !commandLog.hasUncommitted()) {
+                    release(held, results, writerStopped);
+                }
+            }
+
+            if (commandLog != null && failure.get() == null) {
+                commandLog.commit();
+                release(held, results, writerStopped);
+            }
+        } catch (Throwable e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    /**
+     * passes the held results to the writer
+     * @param held results waiting to be written
+     * @param results queue of results
+     * @param writerStopped true once the writer thread is gone
+     */
+    private static void release(final List<Result> held, final SpscQueue<Result> results,
+                                final BooleanSupplier writerStopped) {
+        for (Result result : held) {
+            if (!results.put(result, writerStopped)) {
+                throw new IllegalStateException("the result writer stopped");
+            }
+        }
+        held.clear();
+    }
+
+    /**
+     * waits for a stage to finish
+     * @param thread thread of the stage
+     */
+    private static void join(final Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param failure first failure of the pipeline, null if there was none
+     * @throws IOException if the failure was a reading / writing one
+     */
+    private static void rethrow(final Throwable failure) throws IOException {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                ? failure.getCause() : failure;
+        if (cause == null) {
+            return;
+        }
+        if (cause instanceof IOException) {
+            throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new IllegalStateException(cause);
+    }
+}
@@ -0,0 +1,141 @@
+package main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many test files concurrently.
+ * Every file builds its own Repository, so the files are processed on a fixed worker pool.
+ * A semaphore caps how many files are submitted and not finished yet, so at most that many
+ * inputs are loaded in memory at the same time, independently of the number of workers, and
+ * the queue of the pool never grows past it. The output of every file is the same as in a
+ * sequential run.
+ */
+public final class BatchRunner {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final int numWorkers;
+    private final int maxInFlight;
+
+    /**
+     * @param numWorkers number of threads processing files
+     * @param maxInFlight maximum number of inputs loaded at the same time
+     */
+    public BatchRunner(final int numWorkers, final int maxInFlight) {
+        if (numWorkers < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("workers and in flight inputs must be positive");
+        }
+        this.numWorkers = numWorkers;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Time spent on a single file
+     */
+    public static final class FileTiming {
+        private final String name;
+        private final long millis;
+
+        FileTiming(final String name, final long millis) {
+            this.name = name;
+            this.millis = millis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    /**
+     * runs every input file and writes its result in the output directory
+     * @param inputs input files
+     * @param outputPrefix prefix of the output file paths, followed by the input file name
+     * @return timings of every processed file, in input order
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    public List<FileTiming> run(final List<File> inputs,
+                                final String outputPrefix) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(this.numWorkers);
+        Semaphore inFlight = new Semaphore(this.maxInFlight);
+        List<Future<FileTiming>> futures = new ArrayList<>();
+
+        try {
+            for (File file : inputs) {
+                // taken before the file is queued and given back once it is done
+                inFlight.acquire();
+                futures.add(pool.submit(() -> {
+                    try {
+                        return runFile(file, outputPrefix);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            List<FileTiming> timings = new ArrayList<>();
+            for (Future<FileTiming> future : futures) {
+                FileTiming timing = future.get();
+                if (timing != null) {
+                    timings.add(timing);
+                }
+            }
+            return timings;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("batch run interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * processes a single file
+     * @param file input file
+     * @param outputPrefix prefix of the output file path
+     * @return timing of the file, null if the output file already existed
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    private static FileTiming runFile(final File file,
+                                      final String outputPrefix) throws IOException {
+        String filepath = outputPrefix + file.getName();
+        File out = new File(filepath);
+        if (!out.createNewFile()) {
+            return null;
+        }
+
+        long start = System.nanoTime();
+        Main.action(file.getAbsolutePath(), filepath);
+        return new FileTiming(file.getName(), (System.nanoTime() - start) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * prints the timing of every file and the total
+     * @param timings timings of the processed files
+     * @param wallMillis wall time of the whole batch
+     */
+    public static void printSummary(final List<FileTiming> timings, final long wallMillis) {
+        long total = 0;
+        for (FileTiming timing : timings) {
+            System.out.println(timing.getName() + ": " + timing.getMillis() + " ms");
+            total += timing.getMillis();
+        }
+        System.out.println(timings.size() + " files, " + total + " ms of work in "
+                + wallMillis + " ms");
+    }
+}
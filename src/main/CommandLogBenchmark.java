@@ -0,0 +1,258 @@
+package main;
+
+import common.Constants;
+import database.AccessLocks;
+import database.CommandLog;
+import database.Repository;
+import database.SyncPolicy;
+import fileio.ActionInputData;
+import fileio.Input;
+import fileio.StreamingInputLoader;
+import fileio.UserInputData;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of the command log.
+ * A random workload of view, favorite and rating commands is generated over the users and
+ * videos of an input file, as in {@link ConcurrencyStressTest}, and run on a serial
+ * repository without a log, then with a log under every {@link SyncPolicy}. For every run it
+ * prints the commands per second, the number of syncs and the size of the log.
+ * A new repository reading every log, without running any command, must have the counters
+ * of the repository that wrote it, since the log is replayed when it is opened. The commands
+ * are then run again on a new repository reading the log: the logged ones must be skipped,
+ * so the log must not grow and the state must stay the same as the one of the repository
+ * that wrote it. A log must
+ * be refused on top of another input database, and a log whose last record was cut in the
+ * middle must replay every record but the last one.
+ * <p>
+ * Usage: input file, then optionally the number of commands and the group size.
+ */
+public final class CommandLogBenchmark {
+    private static final int ARG_INPUT = 0;
+    private static final int ARG_COMMANDS = 1;
+    private static final int ARG_GROUP_SIZE = 2;
+    private static final int DEFAULT_COMMANDS = 20_000;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    /**
+     * bytes cut from the end of the log to simulate a torn write
+     */
+    private static final int TORN_BYTES = 3;
+
+    /**
+     * for coding style
+     */
+    private CommandLogBenchmark() {
+    }
+
+    /**
+     * @param args input file, number of commands, group size
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: CommandLogBenchmark <input> [commands] [groupSize]");
+            return;
+        }
+        int numCommands = intArg(args, ARG_COMMANDS, DEFAULT_COMMANDS);
+        int groupSize = intArg(args, ARG_GROUP_SIZE, Constants.COMMANDS_GROUP_SIZE);
+
+        Input input = new StreamingInputLoader(args[ARG_INPUT]).readData();
+        if (input.getUsers() == null || input.getUsers().isEmpty()) {
+            System.out.println("the input has no users");
+            return;
+        }
+        List<ActionInputData> commands = ConcurrencyStressTest.generateCommands(input,
+                                                                                numCommands);
+
+        Repository baseline = new Repository(input, null);
+        long start = System.nanoTime();
+        for (ActionInputData command : commands) {
+            baseline.execute(command);
+        }
+        printRun("no log", commands.size(), System.nanoTime() - start, 0, 0);
+
+        List<String> errors = new ArrayList<>();
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            Path path = Files.createTempFile("commands", Constants.LOG_EXTENSION);
+            try {
+                Repository repository;
+                long nanos;
+                long syncs;
+                try (CommandLog log = new CommandLog(path, policy, groupSize)) {
+                    repository = new Repository(input, null, AccessLocks.NONE, log);
+                    start = System.nanoTime();
+                    for (ActionInputData command : commands) {
+                        repository.execute(command);
+                    }
+                    log.commit();
+                    nanos = System.nanoTime() - start;
+                    syncs = log.getSyncs();
+                }
+                printRun(policy.name(), commands.size(), nanos, syncs, Files.size(path));
+
+                checkReopen(input, path, policy, groupSize, baseline, errors);
+                checkRerun(input, commands, path, policy, groupSize, baseline, errors);
+                checkOtherInput(input, path, policy, groupSize, errors);
+                checkTornTail(input, path, policy, groupSize, commands.size(), errors);
+            } finally {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        if (errors.isEmpty()) {
+            System.out.println("OK: every log is run again to the state that wrote it");
+        } else {
+            errors.stream().limit(Constants.MAX_LENGTH).forEach(System.out::println);
+            System.out.println("FAILED: " + errors.size() + " differences");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param args command line arguments
+     * @param index position of the argument
+     * @param defaultValue value used if the argument is missing
+     * @return value of the argument
+     */
+    private static int intArg(final String[] args, final int index, final int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    /**
+     * opens a new repository on the log without running any command, and compares the
+     * counters of its videos and the ratings of its users with the expected ones
+     * @param input input data
+     * @param path log file
+     * @param policy sync policy of the log
+     * @param groupSize group size of the log
+     * @param expected repository that ran the commands without a log
+     * @param errors list of differences
+     * @throws IOException in case of exceptions to reading
+     */
+    private static void checkReopen(final Input input, final Path path,
+                                    final SyncPolicy policy, final int groupSize,
+                                    final Repository expected,
+                                    final List<String> errors) throws IOException {
+        Input database = new Input(input.getActors(), input.getUsers(), new ArrayList<>(),
+                                   input.getMovies(), input.getSerials());
+        try (CommandLog log = new CommandLog(path, policy, groupSize)) {
+            Repository reopened = new Repository(database, null, AccessLocks.NONE, log);
+            List<String> differences = new ArrayList<>();
+            ConcurrencyStressTest.compareVideos(expected.getCatalog(), reopened.getCatalog(),
+                                                differences);
+            ConcurrencyStressTest.compareUsers(input.getUsers(), expected, reopened,
+                                               differences);
+            differences.forEach(difference -> errors.add(policy + ": reopened: " + difference));
+        }
+    }
+
+    /**
+     * runs the logged commands again on a new repository reading the log, and compares its
+     * state with the expected one
+     * @param input input data
+     * @param commands logged commands
+     * @param path log file
+     * @param policy sync policy of the log
+     * @param groupSize group size of the log
+     * @param expected repository that ran the commands without a log
+     * @param errors list of differences
+     * @throws IOException in case of exceptions to reading
+     */
+    private static void checkRerun(final Input input, final List<ActionInputData> commands,
+                                   final Path path, final SyncPolicy policy,
+                                   final int groupSize, final Repository expected,
+                                   final List<String> errors) throws IOException {
+        try (CommandLog log = new CommandLog(path, policy, groupSize)) {
+            long start = System.nanoTime();
+            Repository rerun = new Repository(input, null, AccessLocks.NONE, log);
+            for (ActionInputData command : commands) {
+                rerun.execute(command);
+            }
+            log.commit();
+            long nanos = System.nanoTime() - start;
+            if (log.getCommitted() != commands.size()) {
+                errors.add(policy + ": the log holds " + log.getCommitted()
+                        + " commands after running " + commands.size() + " commands twice");
+            }
+            System.out.println("  rerun " + commands.size() * NANOS_PER_SECOND
+                    / Math.max(nanos, 1) + " commands/s");
+
+            List<String> differences = new ArrayList<>();
+            ConcurrencyStressTest.compareVideos(expected.getCatalog(), rerun.getCatalog(),
+                                                differences);
+            ConcurrencyStressTest.compareUsers(input.getUsers(), expected, rerun, differences);
+            differences.forEach(difference -> errors.add(policy + ": " + difference));
+        }
+    }
+
+    /**
+     * reads the log on top of the input database without its last user, which must be refused
+     * @param input input data
+     * @param path log file
+     * @param policy sync policy of the log
+     * @param groupSize group size of the log
+     * @param errors list of differences
+     * @throws IOException in case of exceptions to reading
+     */
+    private static void checkOtherInput(final Input input, final Path path,
+                                        final SyncPolicy policy, final int groupSize,
+                                        final List<String> errors) throws IOException {
+        List<UserInputData> users = input.getUsers();
+        Input other = new Input(input.getActors(), users.subList(0, users.size() - 1),
+                                input.getCommands(), input.getMovies(), input.getSerials());
+        try (CommandLog log = new CommandLog(path, policy, groupSize)) {
+            new Repository(other, null, AccessLocks.NONE, log);
+            errors.add(policy + ": the log was read on top of another input database");
+        } catch (UncheckedIOException e) {
+            // refused, as expected
+        }
+    }
+
+    /**
+     * cuts the end of the last record and checks that only this record is dropped
+     * @param input input data
+     * @param path log file
+     * @param policy sync policy of the log
+     * @param groupSize group size of the log
+     * @param numCommands number of logged commands
+     * @param errors list of differences
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    private static void checkTornTail(final Input input, final Path path,
+                                      final SyncPolicy policy, final int groupSize,
+                                      final int numCommands,
+                                      final List<String> errors) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - TORN_BYTES);
+        }
+        try (CommandLog log = new CommandLog(path, policy, groupSize)) {
+            new Repository(input, null, AccessLocks.NONE, log);
+            long replayed = log.getCommitted();
+            if (replayed != numCommands - 1) {
+                errors.add(policy + ": replayed " + replayed + " commands of a torn log, "
+                        + "expected " + (numCommands - 1));
+            }
+        }
+    }
+
+    /**
+     * @param name name of the run
+     * @param numCommands number of commands
+     * @param nanos duration of the run
+     * @param syncs number of syncs
+     * @param logSize size of the log in bytes
+     */
+    private static void printRun(final String name, final int numCommands, final long nanos,
+                                 final long syncs, final long logSize) {
+        System.out.println(name + ": " + numCommands * NANOS_PER_SECOND / Math.max(nanos, 1)
+                + " commands/s, " + syncs + " syncs, " + logSize + " bytes of log");
+    }
+}
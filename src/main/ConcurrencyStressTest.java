@@ -0,0 +1,370 @@
+package main;
+
+import common.Constants;
+import database.Catalog;
+import database.MetricVersions;
+import database.Repository;
+import database.StripedLocks;
+import database.SymbolTable;
+import fileio.ActionInputData;
+import fileio.Input;
+import fileio.MovieInputData;
+import fileio.SerialInputData;
+import fileio.StreamingInputLoader;
+import fileio.UserInputData;
+import models.User;
+import models.video.Video;
+import utils.IntIntMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stress test of the concurrent repository mode.
+ * A random workload of view, favorite and rating commands is generated over the users and
+ * videos of an input file. It is replayed once on a serial repository and once on a striped
+ * one, where every writer thread owns a share of the users and runs their commands in order,
+ * while reader threads keep running the queries and recommendations of the file.
+ * The command results and the final counters of every video and user must be the same, and
+ * no version of the metrics may stay pinned. While the writers run, every reader also pins
+ * versions one after the other and checks that no counter of a video goes down from one
+ * version to the next, which a version holding part of a command, or an old version, would
+ * show. The reads, which run on versions of the metrics in the striped mode, are also checked
+ * against the serial ones on a striped repository that replays the commands in order, since
+ * only then are the ratings equal to the last bit.
+ * <p>
+ * Usage: input file, then optionally the number of commands, writer threads and readers.
+ */
+public final class ConcurrencyStressTest {
+    private static final int DEFAULT_COMMANDS = 200_000;
+    private static final int DEFAULT_WRITERS = 8;
+    private static final int DEFAULT_READERS = 2;
+    private static final int NUM_STRIPES = 64;
+    private static final long SEED = 42;
+    /**
+     * positions of the command line arguments
+     */
+    private static final int ARG_INPUT = 0;
+    private static final int ARG_COMMANDS = 1;
+    private static final int ARG_WRITERS = 2;
+    private static final int ARG_READERS = 3;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final int MAX_GRADE = 10;
+    /**
+     * one command in this many targets a title that is not in the catalog
+     */
+    private static final int UNKNOWN_TITLE_RATE = 50;
+    private static final int NUM_COMMAND_TYPES = 3;
+    /**
+     * ratings of the same video may be added in another order, so the last bits can differ
+     */
+    private static final double RATING_TOLERANCE = 1e-9;
+
+    /**
+     * for coding style
+     */
+    private ConcurrencyStressTest() {
+    }
+
+    /**
+     * @param args input file, number of commands, writer threads, reader threads
+     * @throws IOException in case of exceptions to reading
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        if (args.length <= ARG_INPUT) {
+            System.out.println("usage: ConcurrencyStressTest <input> [commands] [writers]"
+                    + " [readers]");
+            return;
+        }
+        int numCommands = intArg(args, ARG_COMMANDS, DEFAULT_COMMANDS);
+        int numWriters = intArg(args, ARG_WRITERS, DEFAULT_WRITERS);
+        int numReaders = intArg(args, ARG_READERS, DEFAULT_READERS);
+
+        Input input = new StreamingInputLoader(args[ARG_INPUT]).readData();
+        if (input.getUsers() == null || input.getUsers().isEmpty()) {
+            System.out.println("the input has no users");
+            return;
+        }
+        List<ActionInputData> commands = generateCommands(input, numCommands);
+        List<ActionInputData> reads = new ArrayList<>();
+        for (ActionInputData action : input.getCommands()) {
+            if (!action.getActionType().equals(Constants.COMMAND)) {
+                reads.add(action);
+            }
+        }
+
+        Repository serial = new Repository(input, null);
+        String[] expected = new String[commands.size()];
+        long start = System.nanoTime();
+        for (int i = 0; i < commands.size(); i++) {
+            expected[i] = serial.execute(commands.get(i));
+        }
+        long serialNanos = System.nanoTime() - start;
+
+        Repository concurrent = new Repository(input, null, new StripedLocks(NUM_STRIPES));
+        String[] actual = new String[commands.size()];
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        start = System.nanoTime();
+        runConcurrently(concurrent, commands, reads, actual, numWriters, numReaders, errors);
+        long concurrentNanos = System.nanoTime() - start;
+
+        for (int i = 0; i < commands.size(); i++) {
+            if (!expected[i].equals(actual[i])) {
+                errors.add("command " + i + ": expected '" + expected[i]
+                        + "' got '" + actual[i] + "'");
+            }
+        }
+        compareVideos(serial.getCatalog(), concurrent.getCatalog(), errors);
+        compareUsers(input.getUsers(), serial, concurrent, errors);
+        if (serial.getStats().getViews() != concurrent.getStats().getViews()
+            || serial.getStats().getFavorites() != concurrent.getStats().getFavorites()
+            || serial.getStats().getRatings() != concurrent.getStats().getRatings()
+            || serial.getStats().getErrors() != concurrent.getStats().getErrors()) {
+            errors.add("command statistics differ");
+        }
+        Repository replay = new Repository(input, null, new StripedLocks(NUM_STRIPES));
+        for (ActionInputData command : commands) {
+            replay.execute(command);
+        }
+        for (ActionInputData read : reads) {
+            String message1 = serial.execute(read);
+            String message2 = replay.execute(read);
+            if (message1 == null ? message2 != null : !message1.equals(message2)) {
+                errors.add("read " + read.getActionId() + ": expected '" + message1
+                        + "' got '" + message2 + "'");
+            }
+        }
+        if (concurrent.getVersions().getPinned() != 0) {
+            errors.add(concurrent.getVersions().getPinned() + " versions are still pinned");
+        }
+
+        System.out.println(commands.size() + " commands, serial "
+                + serialNanos / NANOS_PER_MILLI + " ms, " + numWriters + " writers and "
+                + numReaders + " readers "
+                + concurrentNanos / NANOS_PER_MILLI + " ms");
+        if (errors.isEmpty()) {
+            System.out.println("OK: the concurrent run matches the serial replay");
+        } else {
+            errors.stream().limit(Constants.MAX_LENGTH).forEach(System.out::println);
+            System.out.println("FAILED: " + errors.size() + " differences");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param args command line arguments
+     * @param index position of an optional int argument
+     * @param defaultValue value used when the argument is missing
+     * @return the argument, or the default value
+     */
+    private static int intArg(final String[] args, final int index, final int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    /**
+     * generates random commands over the users and videos of the input
+     * @param input input data
+     * @param numCommands number of commands
+     * @return the commands, with their index as action id
+     */
+    static List<ActionInputData> generateCommands(final Input input, final int numCommands) {
+        List<String> titles = new ArrayList<>();
+        List<Integer> seasons = new ArrayList<>();
+        if (input.getMovies() != null) {
+            for (MovieInputData movie : input.getMovies()) {
+                titles.add(movie.getTitle());
+                seasons.add(0);
+            }
+        }
+        if (input.getSerials() != null) {
+            for (SerialInputData show : input.getSerials()) {
+                titles.add(show.getTitle());
+                seasons.add(show.getSeasons().size());
+            }
+        }
+
+        Random random = new Random(SEED);
+        List<ActionInputData> commands = new ArrayList<>(numCommands);
+        for (int i = 0; i < numCommands; i++) {
+            String username = input.getUsers().get(random.nextInt(input.getUsers().size()))
+                    .getUsername();
+            String title;
+            int season = 0;
+            if (titles.isEmpty() || random.nextInt(UNKNOWN_TITLE_RATE) == 0) {
+                title = "unknown title " + random.nextInt(UNKNOWN_TITLE_RATE);
+            } else {
+                int video = random.nextInt(titles.size());
+                title = titles.get(video);
+                if (seasons.get(video) > 0) {
+                    season = 1 + random.nextInt(seasons.get(video));
+                }
+            }
+            String type = switch (random.nextInt(NUM_COMMAND_TYPES)) {
+                case 0 -> Constants.VIEW;
+                case 1 -> Constants.FAVORITE;
+                default -> Constants.RATING;
+            };
+            commands.add(new ActionInputData(i, Constants.COMMAND, type, username, title,
+                    (double) (1 + random.nextInt(MAX_GRADE)), season));
+        }
+        return commands;
+    }
+
+    /**
+     * runs the commands on writer threads, each one owning the users with the same id
+     * modulo the number of writers, while readers run the reads until the writers finish
+     * @param repository concurrent repository
+     * @param commands commands to run
+     * @param reads queries and recommendations run by the readers
+     * @param results results of the commands, by command index
+     * @param numWriters number of writer threads
+     * @param numReaders number of reader threads
+     * @param errors list of differences, shared by the readers
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static void runConcurrently(final Repository repository,
+                                        final List<ActionInputData> commands,
+                                        final List<ActionInputData> reads,
+                                        final String[] results,
+                                        final int numWriters, final int numReaders,
+                                        final List<String> errors)
+            throws InterruptedException {
+        List<List<Integer>> shares = new ArrayList<>();
+        for (int i = 0; i < numWriters; i++) {
+            shares.add(new ArrayList<>());
+        }
+        for (int i = 0; i < commands.size(); i++) {
+            User user = repository.getUser(commands.get(i).getUsername());
+            shares.get(user.getId() % numWriters).add(i);
+        }
+
+        CountDownLatch startSignal = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (List<Integer> share : shares) {
+            writers.add(new Thread(() -> {
+                awaitStart(startSignal);
+                for (int index : share) {
+                    results[index] = repository.execute(commands.get(index));
+                }
+            }));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < numReaders && !reads.isEmpty(); i++) {
+            int offset = i;
+            readers.add(new Thread(() -> {
+                awaitStart(startSignal);
+                // the previous version stays pinned until the next one is compared with it
+                MetricVersions.Snapshot previous = repository.pinVersion();
+                for (int j = offset; writing.get(); j++) {
+                    repository.execute(reads.get(j % reads.size()));
+                    MetricVersions.Snapshot snapshot = repository.pinVersion();
+                    compareVersions(repository.getCatalog().size(), previous, snapshot,
+                                    errors);
+                    repository.getVersions().release(previous);
+                    previous = snapshot;
+                }
+                repository.getVersions().release(previous);
+            }));
+        }
+
+        writers.forEach(Thread::start);
+        readers.forEach(Thread::start);
+        startSignal.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+    }
+
+    /**
+     * @param startSignal latch released when all the threads are started
+     */
+    private static void awaitStart(final CountDownLatch startSignal) {
+        try {
+            startSignal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * checks that no counter of a video went down from a version to a later one
+     * @param numVideos number of catalog videos
+     * @param older version pinned first
+     * @param newer version pinned next
+     * @param errors list of differences
+     */
+    private static void compareVersions(final int numVideos,
+                                        final MetricVersions.Snapshot older,
+                                        final MetricVersions.Snapshot newer,
+                                        final List<String> errors) {
+        for (int id = 0; id < numVideos; id++) {
+            if (newer.getNumViews(id) < older.getNumViews(id)
+                || newer.getNumFavorites(id) < older.getNumFavorites(id)
+                || newer.getNumRatings(id) < older.getNumRatings(id)) {
+                errors.add("video " + id + " has lower counters in version "
+                        + newer.getNumber() + " than in version " + older.getNumber());
+            }
+        }
+    }
+
+    /**
+     * compares the counters of every video
+     * @param expected catalog of the serial repository
+     * @param actual catalog of the concurrent repository
+     * @param errors list of differences
+     */
+    static void compareVideos(final Catalog expected, final Catalog actual,
+                              final List<String> errors) {
+        for (int id = 0; id < expected.size(); id++) {
+            Video video1 = expected.getVideo(id);
+            Video video2 = actual.getVideo(id);
+            if (video1.getNumViews() != video2.getNumViews()
+                || video1.getNumFavorites() != video2.getNumFavorites()
+                || video1.getNumRatings() != video2.getNumRatings()
+                || Math.abs(video1.getRating() - video2.getRating()) > RATING_TOLERANCE) {
+                errors.add("video " + video1.getTitle() + " has different counters");
+            }
+        }
+    }
+
+    /**
+     * compares the history and the number of ratings of every user
+     * @param usersData input users
+     * @param expected serial repository
+     * @param actual concurrent repository
+     * @param errors list of differences
+     */
+    static void compareUsers(final List<UserInputData> usersData,
+                             final Repository expected, final Repository actual,
+                             final List<String> errors) {
+        for (UserInputData userData : usersData) {
+            User user1 = expected.getUser(userData.getUsername());
+            User user2 = actual.getUser(userData.getUsername());
+            IntIntMap history1 = user1.getHistory();
+            IntIntMap history2 = user2.getHistory();
+            boolean same = user1.getNumRatings() == user2.getNumRatings()
+                    && history1.size() == history2.size();
+            // titles out of the catalog may get other ids, so the titles are compared
+            SymbolTable titles1 = expected.getCatalog().getTitles();
+            SymbolTable titles2 = actual.getCatalog().getTitles();
+            for (int i = 0; same && i < history1.size(); i++) {
+                int videoId = titles2.lookup(titles1.getName(history1.keyAt(i)));
+                same = history2.get(videoId, -1) == history1.valueAt(i);
+            }
+            if (!same) {
+                errors.add("user " + userData.getUsername() + " has a different state");
+            }
+        }
+    }
+}
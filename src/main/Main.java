@@ -3,23 +3,37 @@ package main;
 import checker.Checkstyle;
 import checker.Checker;
 import common.Constants;
+import database.AccessLocks;
+import database.CommandLog;
+import database.DatabaseSnapshot;
 import database.Repository;
+import database.StripedLocks;
+import database.SyncPolicy;
+import fileio.ActionInputData;
 import fileio.Input;
-import fileio.InputLoader;
-import fileio.Writer;
-import org.json.simple.JSONArray;
+import fileio.ResultSink;
+import fileio.StreamingInputLoader;
+import fileio.StreamingWriter;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The entry point to this homework. It runs the checker that tests your implentation.
  */
 public final class Main {
+    /**
+     * capacity of the queues between the stages of the pipelined mode
+     */
+    private static final int PIPELINE_CAPACITY = 1024;
+
     /**
      * for coding style
      */
@@ -43,15 +57,15 @@ public final class Main {
         Checker checker = new Checker();
         checker.deleteFiles(outputDirectory.listFiles());
 
-        for (File file : Objects.requireNonNull(directory.listFiles())) {
-
-            String filepath = Constants.OUT_PATH + file.getName();
-            File out = new File(filepath);
-            boolean isCreated = out.createNewFile();
-            if (isCreated) {
-                action(file.getAbsolutePath(), filepath);
-            }
-        }
+        // files are independent, so they are run on a worker pool
+        int workers = Integer.getInteger(Constants.BATCH_WORKERS,
+                                         Runtime.getRuntime().availableProcessors());
+        int inFlight = Integer.getInteger(Constants.BATCH_IN_FLIGHT, workers);
+        long start = System.currentTimeMillis();
+        List<BatchRunner.FileTiming> timings = new BatchRunner(workers, inFlight)
+                .run(Arrays.asList(Objects.requireNonNull(directory.listFiles())),
+                     Constants.OUT_PATH);
+        BatchRunner.printSummary(timings, System.currentTimeMillis() - start);
 
         checker.iterateFiles(Constants.RESULT_PATH, Constants.REF_PATH, Constants.TESTS_PATH);
         Checkstyle test = new Checkstyle();
@@ -65,15 +79,101 @@ public final class Main {
      */
     public static void action(final String filePath1,
                               final String filePath2) throws IOException {
-        InputLoader inputLoader = new InputLoader(filePath1);
+        if (Boolean.getBoolean(Constants.ACTION_PIPELINE)) {
+            try (CommandLog commandLog = openCommandLog(filePath2)) {
+                new ActionPipeline(PIPELINE_CAPACITY).run(filePath1, filePath2, commandLog);
+            }
+            return;
+        }
+        StreamingInputLoader inputLoader = new StreamingInputLoader(filePath1);
         Input input = inputLoader.readData();
 
-        Writer fileWriter = new Writer(filePath2);
-        JSONArray arrayResult = new JSONArray();
+        run((sink, locks, commandLog) -> new Repository(input, sink, locks, commandLog),
+            filePath2);
+    }
 
-        Repository repo = new Repository(input, fileWriter, arrayResult);
-        repo.runActions();
+    /**
+     * Runs the actions of a file against a database opened from a binary snapshot. Only the
+     * actions of the file are read
+     * @param snapshotPath for database snapshot
+     * @param actionsPath for input file containing the actions
+     * @param outputPath for output file
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    public static void actionFromSnapshot(final String snapshotPath,
+                                          final String actionsPath,
+                                          final String outputPath) throws IOException {
+        DatabaseSnapshot snapshot = new DatabaseSnapshot(snapshotPath);
+        List<ActionInputData> actions = new StreamingInputLoader(actionsPath)
+                .readActions(snapshot.getDefaultNumber());
+        run((sink, locks, commandLog) -> new Repository(snapshot, actions, sink, locks,
+                                                        commandLog),
+            outputPath);
+    }
 
-        fileWriter.closeJSON(arrayResult);
+    /**
+     * opens the command log of an output file, if a log directory is given. The log is named
+     * after the output file and bound to the input database by the repository, so running
+     * the same file again checks its commands against the log instead of applying them twice,
+     * and running another database with the same output name is refused
+     * @param outputPath for output file
+     * @return the log, null if the commands are not logged
+     * @throws IOException in case of exceptions to opening the log
+     */
+    private static CommandLog openCommandLog(final String outputPath) throws IOException {
+        String directory = System.getProperty(Constants.COMMANDS_LOG);
+        if (directory == null) {
+            return null;
+        }
+        Path logDirectory = Paths.get(directory);
+        Files.createDirectories(logDirectory);
+        Path logPath = logDirectory.resolve(Paths.get(outputPath).getFileName()
+                                            + Constants.LOG_EXTENSION);
+        SyncPolicy policy = SyncPolicy.valueOf(System.getProperty(Constants.COMMANDS_SYNC,
+                                                                  SyncPolicy.GROUP.name()));
+        int groupSize = Integer.getInteger(Constants.COMMANDS_GROUP,
+                                           Constants.COMMANDS_GROUP_SIZE);
+        return new CommandLog(logPath, policy, groupSize);
+    }
+
+    /**
+     * @param database builds the repository of the loaded database
+     * @param outputPath for output file
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    private static void run(final RepositoryFactory database,
+                            final String outputPath) throws IOException {
+        // the actions of a file run in parallel only if more than one worker is asked for
+        int workers = Integer.getInteger(Constants.ACTION_WORKERS, 1);
+        try (CommandLog commandLog = openCommandLog(outputPath);
+             StreamingWriter fileWriter = new StreamingWriter(outputPath)) {
+            if (workers > 1) {
+                Repository repo = database.create(fileWriter,
+                                                  new StripedLocks(Constants.USER_STRIPES),
+                                                  commandLog);
+                ForkJoinPool pool = new ForkJoinPool(workers);
+                try {
+                    repo.runActions(pool);
+                } finally {
+                    pool.shutdown();
+                }
+            } else {
+                Repository repo = database.create(fileWriter, AccessLocks.NONE, commandLog);
+                repo.runActions();
+            }
+        }
+    }
+
+    /**
+     * builds a repository of a loaded database, from an input or from a snapshot
+     */
+    private interface RepositoryFactory {
+        /**
+         * @param resultSink destination of the action results
+         * @param locks locks taken by every action
+         * @param commandLog log of the commands, null if the commands are not logged
+         * @return the repository
+         */
+        Repository create(ResultSink resultSink, AccessLocks locks, CommandLog commandLog);
     }
 }
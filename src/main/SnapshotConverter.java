@@ -0,0 +1,34 @@
+package main;
+
+import database.DatabaseSnapshot;
+import fileio.Input;
+import fileio.StreamingInputLoader;
+
+import java.io.IOException;
+
+/**
+ * Converts the database of a JSON test file into a binary snapshot of the repository built
+ * from it.
+ * The snapshot can then be used with {@link Main#actionFromSnapshot} for any number of
+ * action files that run against the same catalog.
+ */
+public final class SnapshotConverter {
+    /**
+     * for coding style
+     */
+    private SnapshotConverter() {
+    }
+
+    /**
+     * @param args JSON input file and snapshot output file
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("usage: SnapshotConverter <input.json> <output.snapshot>");
+            return;
+        }
+        Input input = new StreamingInputLoader(args[0]).readData();
+        DatabaseSnapshot.write(input, args[1]);
+    }
+}
@@ -2,30 +2,113 @@ package models;
 
 import actor.ActorsAwards;
 import common.Constants;
+import database.ActorIndex;
+import database.Catalog;
+import database.SymbolTable;
+import database.VideoColumns;
 import fileio.ActionInputData;
 import fileio.ActorInputData;
-import models.video.Video;
+import utils.TopK;
+import utils.Utils;
 
 import java.util.*;
+import java.util.function.IntToDoubleFunction;
+import java.util.regex.Pattern;
 
 /**
  * Actor class used to model actor data
  */
 public final class Actor {
+    private static final Pattern PUNCTUATION = Pattern.compile("[!?,.\"()'-]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final int id;
     private final String name;
     private final String careerDescription;
-    private final ArrayList<String> filmography;
-    private final Map<String, Integer> awards;
-
-    public Actor(final ActorInputData actorData) {
-        this.name = actorData.getName();
-        this.careerDescription = actorData.getCareerDescription();
-        this.filmography = actorData.getFilmography();
-        this.awards = new HashMap<>();
-        for (ActorsAwards actorAward : actorData.getAwards().keySet()) {
-            this.awards.put(actorAward.toString(), actorData.getAwards().get(actorAward));
+    /**
+     * ids of the catalog videos the actor played in
+     */
+    private final int[] filmography;
+    private final EnumMap<ActorsAwards, Integer> awards;
+    /**
+     * bitmask of the awards, one bit for every {@link ActorsAwards}
+     */
+    private final long awardMask;
+    private final int numAwards;
+    /**
+     * mean of the filmography ratings, kept up to date by {@link #updateRatingMean}
+     */
+    private double ratingMean;
+
+    public Actor(final ActorInputData actorData, final int id, final Catalog catalog) {
+        this(id, actorData.getName(), actorData.getCareerDescription(),
+             filmographyOf(actorData, catalog), awardsOf(actorData));
+    }
+
+    /**
+     * @param id actor id
+     * @param name name of the actor
+     * @param careerDescription career description
+     * @param filmography ids of the catalog videos the actor played in
+     * @param awards number of times every award was won
+     */
+    public Actor(final int id, final String name, final String careerDescription,
+                 final int[] filmography, final EnumMap<ActorsAwards, Integer> awards) {
+        this.id = id;
+        this.name = name;
+        this.careerDescription = careerDescription;
+        this.filmography = filmography;
+        this.awards = awards;
+        long mask = 0;
+        int total = 0;
+        for (Map.Entry<ActorsAwards, Integer> actorAward : awards.entrySet()) {
+            mask |= Utils.awardBit(actorAward.getKey());
+            total += actorAward.getValue();
+        }
+        this.awardMask = mask;
+        this.numAwards = total;
+        this.ratingMean = 0;
+    }
+
+    /**
+     * @param actorData input actor
+     * @param catalog catalog of all videos
+     * @return ids of the catalog videos of the filmography
+     */
+    private static int[] filmographyOf(final ActorInputData actorData, final Catalog catalog) {
+        // videos that are not in the catalog never have a rating, so they are left out
+        ArrayList<Integer> videoIds = new ArrayList<>();
+        if (actorData.getFilmography() != null) {
+            for (String title : actorData.getFilmography()) {
+                int videoId = catalog.getTitles().lookup(title);
+                if (videoId != SymbolTable.MISSING && catalog.getVideo(videoId) != null) {
+                    videoIds.add(videoId);
+                }
+            }
         }
+        int[] filmography = new int[videoIds.size()];
+        for (int i = 0; i < filmography.length; i++) {
+            filmography[i] = videoIds.get(i);
+        }
+        return filmography;
+    }
 
+    /**
+     * @param actorData input actor
+     * @return the awards of the input, without the unknown ones
+     */
+    private static EnumMap<ActorsAwards, Integer> awardsOf(final ActorInputData actorData) {
+        EnumMap<ActorsAwards, Integer> awards = new EnumMap<>(ActorsAwards.class);
+        for (Map.Entry<ActorsAwards, Integer> actorAward : actorData.getAwards().entrySet()) {
+            if (actorAward.getKey() != null) {
+                awards.put(actorAward.getKey(), actorAward.getValue());
+            }
+        }
+        return awards;
+    }
+
+    public int getId() {
+        return id;
     }
 
     public String getName() {
@@ -36,42 +119,82 @@ public final class Actor {
         return careerDescription;
     }
 
-    public ArrayList<String> getFilmography() {
+    public int[] getFilmography() {
         return filmography;
     }
 
-    public Map<String, Integer> getAwards() {
+    public EnumMap<ActorsAwards, Integer> getAwards() {
         return awards;
     }
 
+    public long getAwardMask() {
+        return awardMask;
+    }
+
+    /**
+     * checks if the actor has all the awards of a bitmask
+     * @param mask bitmask of awards
+     * @return truth value
+     */
+    public boolean hasAllAwards(final long mask) {
+        return (this.awardMask & mask) == mask;
+    }
+
+    /**
+     * gets all the distinct words of a career description, in lower case
+     * @param description career description
+     * @return set of words
+     */
+    public static Set<String> descriptionWords(final String description) {
+        if (description == null) {
+            return Collections.emptySet();
+        }
+        String replacedString = PUNCTUATION.matcher(description).replaceAll(" ");
+        return new HashSet<>(Arrays.asList(WHITESPACE.split(replacedString.toLowerCase())));
+    }
+
     /**
      * Gets number of awards of an actor
      * @return number of awards
      */
     public int getNumAwards() {
-        int numAwards = 0;
-        for (int numAward : this.getAwards().values()) {
-            numAwards += numAward;
-        }
         return numAwards;
     }
 
     /**
      * Gets filmography rating mean of the actor
-     * @param videoDict map containing all the movies
      * @return mean of the actor
      */
-    public Double getFilmographyRatingMean(final HashMap<String, Video> videoDict) {
+    public double getFilmographyRatingMean() {
+        return ratingMean;
+    }
+
+    /**
+     * Computes again the filmography rating mean of the actor.
+     * Must be called after a video of the filmography is rated
+     * @param catalog catalog containing all the videos
+     */
+    public void updateRatingMean(final Catalog catalog) {
+        this.ratingMean = computeRatingMean(catalog);
+    }
+
+    /**
+     * Computes filmography rating mean of the actor
+     * @param catalog catalog containing all the videos
+     * @return mean of the actor
+     */
+    private double computeRatingMean(final Catalog catalog) {
         double mean = 0;
         int numVideosInDatabase = 0;
-        for (String video : filmography) {
-            if (videoDict.containsKey(video) && videoDict.get(video).getRating() != 0) {
-                mean += videoDict.get(video).getRating();
+        VideoColumns columns = catalog.getColumns();
+        for (int videoId : filmography) {
+            if (columns.getRating(videoId) != 0) {
+                mean += columns.getRating(videoId);
                 numVideosInDatabase++;
             }
         }
         if (mean == 0) {
-            return 0.0;
+            return 0;
         }
 
         return mean / numVideosInDatabase;
@@ -99,34 +222,39 @@ public final class Actor {
     }
 
     /**
-     * function that sorts a given list using a specific comparator and specific order
+     * function that selects the first actors of a list using a specific comparator
+     * and specific order
      * @param order order in which the list to be sorted (ascending or descending)
      * @param actorList actor list to be sorded
      * @param comparator comparator using for sorting
+     * @param number number of actors needed
+     * @return the first number actors, sorted
      */
-    private static void sortByOrder(final ArrayList<Actor> actorList,
-                                    final String order,
-                                    final Comparator<Actor> comparator) {
+    private static ArrayList<Actor> sortByOrder(final ArrayList<Actor> actorList,
+                                                final String order,
+                                                final Comparator<Actor> comparator,
+                                                final int number) {
         if (order.equals(Constants.ASCENDING)) {
-            actorList.sort(comparator);
+            return TopK.select(actorList, comparator, number);
         } else if (order.equals(Constants.DESCENDING)) {
-            actorList.sort(Collections.reverseOrder(comparator));
+            return TopK.select(actorList, Collections.reverseOrder(comparator), number);
         }
+        return actorList;
     }
 
     /**
      * query actors by filmography mean
-     * @param actorDict map of all actors
-     * @param videoDict map of all videos
+     * @param actors all actors
+     * @param means filmography mean of every actor, by actor id
      * @param action action data
      * @return result string of query
      */
-    public static String queryAverage(final HashMap<String, Actor> actorDict,
-                                      final HashMap<String, Video> videoDict,
+    public static String queryAverage(final Actor[] actors,
+                                      final IntToDoubleFunction means,
                                       final ActionInputData action) {
         ArrayList<Actor> actorList = new ArrayList<>();
-        for (Actor actor : actorDict.values()) {
-            if (actor.getFilmographyRatingMean(videoDict) != 0) {
+        for (Actor actor : actors) {
+            if (means.applyAsDouble(actor.getId()) != 0) {
                 actorList.add(actor);
             }
         }
@@ -136,39 +264,30 @@ public final class Actor {
         } else {
             // comparator used for sorting
             Comparator<Actor> averageActorComparator = (actor1, actor2) -> {
-                if (Double.compare(actor1.getFilmographyRatingMean(videoDict),
-                                   actor2.getFilmographyRatingMean(videoDict)) == 0) {
+                double mean1 = means.applyAsDouble(actor1.getId());
+                double mean2 = means.applyAsDouble(actor2.getId());
+                if (Double.compare(mean1, mean2) == 0) {
                     return actor1.getName().compareTo(actor2.getName());
                 } else {
-                    return Double.compare(actor1.getFilmographyRatingMean(videoDict),
-                                          actor2.getFilmographyRatingMean(videoDict));
+                    return Double.compare(mean1, mean2);
                 }
             };
 
-            sortByOrder(actorList, action.getSortType(), averageActorComparator);
-            return parseActorList(actorList, action.getNumber());
+            return parseActorList(sortByOrder(actorList, action.getSortType(),
+                                              averageActorComparator, action.getNumber()),
+                                  action.getNumber());
         }
     }
 
     /**
      * query actors by filter description
-     * @param actorDict map of all actors
+     * @param actors all actors and their indexes
      * @param action action data
      * @return result string of query
      */
-    public static String queryFilterDescriptions(final HashMap<String, Actor> actorDict,
+    public static String queryFilterDescriptions(final ActorIndex actors,
                                                  final ActionInputData action) {
-        ArrayList<Actor> actorList = new ArrayList<>();
-
-        for (Actor actor : actorDict.values()) {
-            // getting all the words in the description
-            String replacedString = actor.getCareerDescription().replaceAll("[!?,.\"()'-]", " ");
-            String[] words = replacedString.toLowerCase().split("\\s+");
-            HashSet<String> wordsSet = new HashSet<>(Arrays.asList(words));
-            if (wordsSet.containsAll(action.getFilters().get(2))) {
-                actorList.add(actor);
-            }
-        }
+        ArrayList<Actor> actorList = actors.findByWords(action.getFilters().get(2));
 
         if (actorList.isEmpty()) {
             return "Query result: []";
@@ -176,26 +295,22 @@ public final class Actor {
             // comparator used for sorting
             Comparator<Actor> compareByName = (actor1, actor2) ->
                     actor1.getName().compareTo(actor2.getName());
-            sortByOrder(actorList, action.getSortType(), compareByName);
-            return parseActorList(actorList, action.getNumber());
+            return parseActorList(sortByOrder(actorList, action.getSortType(),
+                                              compareByName, action.getNumber()),
+                                  action.getNumber());
         }
     }
 
     /**
      * query actors by awards
-     * @param actorDict map of all actors
+     * @param actors all actors and their indexes
      * @param action action data
      * @return result string of query
      */
-    public static String queryAwards(final HashMap<String, Actor> actorDict,
+    public static String queryAwards(final ActorIndex actors,
                                      final ActionInputData action) {
-        ArrayList<Actor> actorList = new ArrayList<>();
-        for (Actor actor : actorDict.values()) {
-            if (actor.getAwards().keySet().
-                    containsAll(action.getFilters().get(Constants.FILTER_WORDS))) {
-                actorList.add(actor);
-            }
-        }
+        ArrayList<Actor> actorList = actors.findByAwards(
+                action.getFilters().get(Constants.FILTER_WORDS));
 
         if (actorList.isEmpty()) {
             return "Query result: []";
@@ -208,8 +323,9 @@ public final class Actor {
                 }
             };
 
-            sortByOrder(actorList, action.getSortType(), compareByNumAwards);
-            return parseActorList(actorList, action.getNumber());
+            return parseActorList(sortByOrder(actorList, action.getSortType(),
+                                              compareByNumAwards, action.getNumber()),
+                                  action.getNumber());
         }
     }
 
@@ -219,6 +335,6 @@ public final class Actor {
                 + "name='" + name + '\''
                 + ", careerDescription='"
                 + careerDescription + '\''
-                + ", filmography=" + filmography + '}';
+                + ", filmography=" + Arrays.toString(filmography) + '}';
     }
 }
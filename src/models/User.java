@@ -1,43 +1,128 @@
 package models;
 
 import common.Constants;
-import models.video.PopularGenre;
+import database.Catalog;
+import database.Leaderboard;
+import database.SymbolTable;
+import database.VideoRankings;
+import models.video.Movie;
 import fileio.ActionInputData;
 import fileio.UserInputData;
+import models.video.Show;
 import models.video.Video;
+import utils.IntIntMap;
+import utils.IntSet;
+import utils.LongSet;
+import utils.TopK;
 
 import java.util.*;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Class used to model users
  */
 public final class User {
+    /**
+     * orders users by number of ratings given, then by username
+     */
+    public static final Comparator<User> RATINGS_ORDER = (user1, user2) -> {
+        if (user1.getNumRatings() - user2.getNumRatings() == 0) {
+            return user1.getUsername().compareTo(user2.getUsername());
+        } else {
+            return user1.getNumRatings() - user2.getNumRatings();
+        }
+    };
+
+    private final int id;
     private final String username;
     private final String subscriptionType;
-    private final Map<String, Integer> history;
-    private final ArrayList<String> favoriteMovies;
+    /**
+     * number of views of every seen video, by video id
+     */
+    private final IntIntMap history;
+    /**
+     * ids of the seen videos, the keys of the history
+     */
+    private final BitSet seen;
+    /**
+     * no video before this id is unseen. Videos are never unseen, so it only moves forward
+     */
+    private int firstUnseen;
+    /**
+     * ids of the favorite videos
+     */
+    private final IntSet favoriteMovies;
 
     /**
-     * list of rated movies
+     * ids of the rated movies
      */
-    private final ArrayList<String> ratedMovies;
+    private final IntSet ratedMovies;
     /**
-     * map of rated shows
+     * rated seasons, as show id and season number packed with {@link LongSet#pack}
      */
-    private final HashMap<String, HashSet<Integer>> ratedShows;
+    private final LongSet ratedShows;
     private int numRatings;
 
-    public User(final UserInputData userData) {
-        this.username = userData.getUsername();
-        this.subscriptionType = userData.getSubscriptionType();
-        this.favoriteMovies = userData.getFavoriteMovies();
-        this.history = userData.getHistory();
+    public User(final UserInputData userData, final int id, final SymbolTable titles) {
+        this(id, userData.getUsername(), userData.getSubscriptionType(),
+             historyOf(userData, titles), favoritesOf(userData, titles));
+    }
 
-        this.ratedMovies = new ArrayList<>();
-        this.ratedShows = new HashMap<>();
+    /**
+     * @param id user id
+     * @param username name of the user
+     * @param subscriptionType subscription of the user
+     * @param history number of views of every seen video, by video id
+     * @param favoriteMovies ids of the favorite videos
+     */
+    public User(final int id, final String username, final String subscriptionType,
+                final IntIntMap history, final IntSet favoriteMovies) {
+        this.id = id;
+        this.username = username;
+        this.subscriptionType = subscriptionType;
+        this.history = history;
+        this.seen = new BitSet();
+        for (int i = 0; i < history.size(); i++) {
+            this.seen.set(history.keyAt(i));
+        }
+        this.firstUnseen = 0;
+        this.favoriteMovies = favoriteMovies;
+        this.ratedMovies = new IntSet();
+        this.ratedShows = new LongSet();
         this.numRatings = 0;
     }
 
+    /**
+     * encodes the history of an input user, giving ids to the titles out of the catalog
+     * @param userData input user
+     * @param titles ids of the titles
+     * @return number of views of every seen video, by video id
+     */
+    private static IntIntMap historyOf(final UserInputData userData,
+                                       final SymbolTable titles) {
+        IntIntMap history = new IntIntMap(userData.getHistory().size());
+        for (Map.Entry<String, Integer> entry : userData.getHistory().entrySet()) {
+            history.put(titles.intern(entry.getKey()), entry.getValue());
+        }
+        return history;
+    }
+
+    /**
+     * encodes the favorite list of an input user, giving ids to the titles out of the catalog
+     * @param userData input user
+     * @param titles ids of the titles
+     * @return ids of the favorite videos
+     */
+    private static IntSet favoritesOf(final UserInputData userData, final SymbolTable titles) {
+        IntSet favorites = new IntSet();
+        if (userData.getFavoriteMovies() != null) {
+            for (String title : userData.getFavoriteMovies()) {
+                favorites.add(titles.intern(title));
+            }
+        }
+        return favorites;
+    }
+
     /**
      * increments the number of ratings given
      */
@@ -45,6 +130,10 @@ public final class User {
         this.numRatings++;
     }
 
+    public int getId() {
+        return id;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -53,11 +142,11 @@ public final class User {
         return subscriptionType;
     }
 
-    public Map<String, Integer> getHistory() {
+    public IntIntMap getHistory() {
         return history;
     }
 
-    public ArrayList<String> getFavoriteMovies() {
+    public IntSet getFavoriteMovies() {
         return favoriteMovies;
     }
 
@@ -68,18 +157,20 @@ public final class User {
     /**
      * adds video to favorite
      * @param action action data
-     * @param videoDict dictionary of all videos
+     * @param videoId id of the video title
+     * @param catalog catalog of all videos
      * @return string of command result to be put in output file
      */
-    public String commandFavorite(final ActionInputData action,
-                                  final HashMap<String, Video> videoDict) {
-        if (this.getHistory().containsKey(action.getTitle())) {
-            if (this.getFavoriteMovies().contains(action.getTitle())) {
+    public String commandFavorite(final ActionInputData action, final int videoId,
+                                  final Catalog catalog) {
+        if (this.getHistory().containsKey(videoId)) {
+            if (this.getFavoriteMovies().contains(videoId)) {
                 return "error -> " + action.getTitle() + " is already in favourite list";
             } else {
-                this.getFavoriteMovies().add(action.getTitle());
-                if (videoDict.containsKey(action.getTitle())) {
-                    videoDict.get(action.getTitle()).incrementNumFavorites();
+                this.getFavoriteMovies().add(videoId);
+                Video video = catalog.getVideo(videoId);
+                if (video != null) {
+                    catalog.addFavorite(video);
                 }
                 return "success -> " + action.getTitle() + " was added as favourite";
             }
@@ -90,53 +181,50 @@ public final class User {
     /**
      * views video
      * @param action action data
-     * @param videoDict dictionary of all videos
+     * @param videoId id of the video title
+     * @param catalog catalog of all videos
      * @return string of command result to be put in output file
      */
-    public String commandView(final ActionInputData action,
-                              final HashMap<String, Video> videoDict) {
-        if (videoDict.containsKey(action.getTitle())) {
-            videoDict.get(action.getTitle()).addNumViews(1);
-        }
-        if (getHistory().containsKey(action.getTitle())) {
-            int numViews = this.getHistory().get(action.getTitle());
-            this.getHistory().put(action.getTitle(), numViews + 1);
-        } else {
-            this.getHistory().put(action.getTitle(), 1);
+    public String commandView(final ActionInputData action, final int videoId,
+                              final Catalog catalog) {
+        Video video = catalog.getVideo(videoId);
+        if (video != null) {
+            catalog.addViews(video, 1);
         }
+        int numViews = this.getHistory().addTo(videoId, 1);
+        this.seen.set(videoId);
         return "success -> " + action.getTitle()
-                + " was viewed with total views of " + this.getHistory().get(action.getTitle());
+                + " was viewed with total views of " + numViews;
     }
 
     /**
      * rates video
      * @param action action data
-     * @param movieDict dictionary of all movies
-     * @param showDict dictionaty of all shows
+     * @param videoId id of the video title
+     * @param catalog catalog of all videos
      * @return string of command result to be put in output file
      */
-    public String commandRating(final ActionInputData action,
-                                final HashMap<String, Video> movieDict,
-                                final HashMap<String, Video> showDict) {
-        if (this.getHistory().containsKey(action.getTitle())) {
+    public String commandRating(final ActionInputData action, final int videoId,
+                                final Catalog catalog) {
+        if (this.getHistory().containsKey(videoId)) {
             this.incrementNumRatings();
-            if (movieDict.containsKey(action.getTitle())) {
-                if (getRatedMovies().contains(action.getTitle())) {
+            Video video = catalog.getVideo(videoId);
+            if (video instanceof Movie) {
+                if (getRatedMovies().contains(videoId)) {
                     return "error -> " + action.getTitle() + " has been already rated";
                 } else {
-                    movieDict.get(action.getTitle()).addRating(action.getGrade(), 0);
-                    this.addToRatedMovies(action.getTitle());
+                    catalog.addRating(video, action.getGrade(), 0);
+                    this.addToRatedMovies(videoId);
                     return "success -> " + action.getTitle()
                             + " was rated with " + action.getGrade()
                             + " by " + action.getUsername();
                 }
-            } else if (showDict.containsKey(action.getTitle())) {
-                if (this.hasRatedShow(action.getTitle(), action.getSeasonNumber())) {
+            } else if (video instanceof Show) {
+                if (this.hasRatedShow(videoId, action.getSeasonNumber())) {
                     return "error -> " + action.getTitle() + " has been already rated";
                 } else {
-                    showDict.get(action.getTitle()).addRating(action.getGrade(),
-                                                              action.getSeasonNumber());
-                    this.addToRatedShows(action.getTitle(), action.getSeasonNumber());
+                    catalog.addRating(video, action.getGrade(), action.getSeasonNumber());
+                    this.addToRatedShows(videoId, action.getSeasonNumber());
                     return "success -> " + action.getTitle()
                             + " was rated with " + action.getGrade()
                             + " by " + action.getUsername();
@@ -147,16 +235,33 @@ public final class User {
     }
 
     /**
-     * query users by number of videos seen
-     * @param userDict dictionary of all users
+     * query users by number of ratings given, by reading the top of the users leaderboard
+     * @param leaderboard users with at least one rating, in {@link #RATINGS_ORDER}
+     * @param action action data
+     * @return string of command result to be put in output file
+     */
+    public static String getUsersQuery(final Leaderboard<User> leaderboard,
+                                       final ActionInputData action) {
+        if (leaderboard.isEmpty()) {
+            return "[]";
+        }
+
+        return parseUserList(leaderboard.top(action.getNumber(),
+                action.getSortType().equals(Constants.ASCENDING)), action.getNumber());
+    }
+
+    /**
+     * query users by number of ratings given, read from a version of the metrics
+     * @param users all users
+     * @param ratings number of ratings of every user, by user id
      * @param action action data
      * @return string of command result to be put in output file
      */
-    public static String getUsersQuery(final HashMap<String, User> userDict,
+    public static String getUsersQuery(final User[] users, final IntUnaryOperator ratings,
                                        final ActionInputData action) {
         ArrayList<User> userList = new ArrayList<>();
-        for (User user : userDict.values()) {
-            if (user.getNumRatings() > 0) {
+        for (User user : users) {
+            if (ratings.applyAsInt(user.getId()) > 0) {
                 userList.add(user);
             }
         }
@@ -164,23 +269,34 @@ public final class User {
             return "[]";
         }
 
-        // comparator used to sort users
         Comparator<User> ratingsComparator = (user1, user2) -> {
-            if (user1.getNumRatings() - user2.getNumRatings() == 0) {
+            int ratings1 = ratings.applyAsInt(user1.getId());
+            int ratings2 = ratings.applyAsInt(user2.getId());
+            if (ratings1 - ratings2 == 0) {
                 return user1.getUsername().compareTo(user2.getUsername());
             } else {
-                return user1.getNumRatings() - user2.getNumRatings();
+                return ratings1 - ratings2;
             }
         };
         if (action.getSortType().equals(Constants.ASCENDING)) {
-            userList.sort(ratingsComparator);
+            userList = TopK.select(userList, ratingsComparator, action.getNumber());
         } else if (action.getSortType().equals(Constants.DESCENDING)) {
-            userList.sort(Collections.reverseOrder(ratingsComparator));
+            userList = TopK.select(userList, Collections.reverseOrder(ratingsComparator),
+                                   action.getNumber());
         }
+        return parseUserList(userList, action.getNumber());
+    }
 
+    /**
+     * parses a user list to string
+     * @param userList list of users
+     * @param number number of users to be parsed
+     * @return string of users
+     */
+    private static String parseUserList(final ArrayList<User> userList, final int number) {
         StringBuilder builder = new StringBuilder();
         builder.append("Query result: [");
-        int usersNumber = Math.min(action.getNumber(), userList.size());
+        int usersNumber = Math.min(number, userList.size());
         for (int i = 0; i < usersNumber - 1; i++) {
             builder.append(userList.get(i).getUsername());
             builder.append(", ");
@@ -191,107 +307,90 @@ public final class User {
     }
 
     /**
-     * gets list of all videos unseen by this user
-     * @param videoSet set of all video names
-     * @param videoDict dictionary of all videos
-     * @return list of unseen videos
+     * checks if the user has seen a video
+     * @param videoId id of the video
+     * @return truth value
      */
-    private ArrayList<Video> getUnseenVideos(final LinkedHashSet<String> videoSet,
-                                             final HashMap<String, Video> videoDict) {
-        LinkedHashSet<String> newSet = new LinkedHashSet<>(videoSet);
-        newSet.removeAll(getHistory().keySet());
-        ArrayList<Video> videoList = new ArrayList<>();
-        for (String title : newSet) {
-            if (videoDict.containsKey(title)) {
-                videoList.add(videoList.size(), videoDict.get(title));
-            }
-        }
-
-        return videoList;
+    public boolean hasSeen(final int videoId) {
+        return this.seen.get(videoId);
     }
 
     /**
-     * gets list of all videos unseen by this user from a specific genre
-     * @param videoSet set of all video names
-     * @param videoDict dictionary of all videos
-     * @param genre genre to be filtered
-     * @return list of unseen videos from a genre
+     * gets the first catalog video unseen by this user, starting from an id
+     * @param catalog catalog of all videos
+     * @param from id to start from
+     * @return id of the unseen video, -1 if there is none
      */
-    private ArrayList<Video> getUnseenVideosByGenre(final LinkedHashSet<String> videoSet,
-                                                    final HashMap<String, Video> videoDict,
-                                                    final String genre) {
-        LinkedHashSet<String> newSet = new LinkedHashSet<>(videoSet);
-        newSet.removeAll(getHistory().keySet());
-        ArrayList<Video> videoList = new ArrayList<>();
-        for (String title : newSet) {
-            if (videoDict.containsKey(title) && videoDict.get(title).getGenres().contains(genre)) {
-                videoList.add(videoList.size(), videoDict.get(title));
-            }
-        }
+    private int nextUnseen(final Catalog catalog, final int from) {
+        int videoId = this.seen.nextClearBit(from);
+        return videoId < catalog.size() ? videoId : -1;
+    }
 
-        return videoList;
+    /**
+     * gets the first catalog video unseen by this user. The search starts from where the
+     * previous one stopped, since the videos before it stay seen
+     * @param catalog catalog of all videos
+     * @return id of the unseen video, -1 if there is none
+     */
+    private int firstUnseen(final Catalog catalog) {
+        this.firstUnseen = this.seen.nextClearBit(this.firstUnseen);
+        return this.firstUnseen < catalog.size() ? this.firstUnseen : -1;
     }
 
     /**
      * recommend first unseen video
-     * @param videoSet set of all video names
-     * @param videoDict dictionary of all videos
+     * @param catalog catalog of all videos
      * @return string result of recommendation
      */
-    public String recommendStandard(final LinkedHashSet<String> videoSet,
-                                    final HashMap<String, Video> videoDict) {
-        ArrayList<Video> videoList = getUnseenVideos(videoSet, videoDict);
-        if (videoList.isEmpty()) {
+    public String recommendStandard(final Catalog catalog) {
+        int videoId = firstUnseen(catalog);
+        if (videoId < 0) {
             return "StandardRecommendation cannot be applied!";
         } else {
-            return "StandardRecommendation result: " + videoList.get(0).getTitle();
+            return "StandardRecommendation result: " + catalog.getVideo(videoId).getTitle();
         }
     }
 
     /**
      * recommend best unseen video
-     * @param videoSet set of all video names
-     * @param videoDict dictionary of all videos
+     * @param catalog catalog of all videos
+     * @param rankings orderings of the videos read by the recommendation
      * @return string result of recommendation
      */
-    public String recommendBestUnseen(final LinkedHashSet<String> videoSet,
-                                      final HashMap<String, Video> videoDict) {
-        ArrayList<Video> videoList = getUnseenVideos(videoSet, videoDict);
-
-        if (videoList.isEmpty()) {
+    public String recommendBestUnseen(final Catalog catalog, final VideoRankings rankings) {
+        if (firstUnseen(catalog) < 0) {
             return "BestRatedUnseenRecommendation cannot be applied!";
-        } else {
-            Video searchedVideo = videoList.get(0);
-            for (Video video : videoList) {
-                if (video.getRating() > searchedVideo.getRating()) {
-                    searchedVideo = video;
-                }
-            }
+        }
 
-            return "BestRatedUnseenRecommendation result: " + searchedVideo.getTitle();
+        // the first unseen video of the ranking, ties are already broken by catalog order
+        Iterator<Video> ranking = rankings.iterateBestRated();
+        while (ranking.hasNext()) {
+            Video video = ranking.next();
+            if (!hasSeen(video.getId())) {
+                return "BestRatedUnseenRecommendation result: " + video.getTitle();
+            }
         }
+        return "BestRatedUnseenRecommendation cannot be applied!";
     }
 
     /**
      * recommend first unseen video in the most popular genre
-     * @param videoSet set of all video names
-     * @param videoDict dictionary of all videos
+     * @param catalog catalog of all videos
+     * @param rankings orderings of the genres read by the recommendation
      * @return string result of recommendation
      */
-    public String recommendPopular(final LinkedHashSet<String> videoSet,
-                                   final HashMap<String, Video> videoDict) {
-        ArrayList<Video> videoList = getUnseenVideos(videoSet, videoDict);
+    public String recommendPopular(final Catalog catalog, final VideoRankings rankings) {
+        int first = firstUnseen(catalog);
 
-        if (videoList.isEmpty() || !this.getSubscriptionType().equals(Constants.PREMIUM)) {
+        if (first < 0 || !this.getSubscriptionType().equals(Constants.PREMIUM)) {
             return "PopularRecommendation cannot be applied!";
         }
 
-        ArrayList<String> genresOrdered = PopularGenre.orderedPopularGeneres(videoDict);
-
-        for (String genre : genresOrdered) {
-            for (Video video : videoList) {
-                if (video.getGenres().contains(genre)) {
-                    return "PopularRecommendation result: " + video.getTitle();
+        for (int rank = 0; rank < rankings.getNumGenres(); rank++) {
+            int genre = rankings.getPopularGenre(rank);
+            for (int videoId = first; videoId >= 0; videoId = nextUnseen(catalog, videoId + 1)) {
+                if (catalog.hasGenre(videoId, genre)) {
+                    return "PopularRecommendation result: " + catalog.getVideo(videoId).getTitle();
                 }
             }
         }
@@ -300,101 +399,85 @@ public final class User {
 
     /**
      * gets first unseen video that is is other user's favorite list
-     * @param videoSet set of all video names
-     * @param videoDict dictionary of all videos
+     * @param rankings orderings of the videos read by the recommendation
      * @return string result of recommendation
      */
-    public String recommendFavorite(final LinkedHashSet<String> videoSet,
-                                    final HashMap<String, Video> videoDict) {
-        ArrayList<Video> videoList = new ArrayList<>();
-        for (String video : videoSet) {
-            if (videoDict.get(video).getNumFavorites() != 0
-                && !this.getHistory().containsKey(videoDict.get(video).getTitle())) {
-                videoList.add(videoList.size(), videoDict.get(video));
-            }
+    public String recommendFavorite(final VideoRankings rankings) {
+        if (!this.getSubscriptionType().equals(Constants.PREMIUM)) {
+            return "FavoriteRecommendation cannot be applied!";
         }
 
-        Video searchedVideo;
-        if (videoList.isEmpty() || !this.getSubscriptionType().equals(Constants.PREMIUM)) {
-            return "FavoriteRecommendation cannot be applied!";
-        } else {
-            searchedVideo = videoList.get(0);
-            for (Video video : videoList) {
-                if (video.getNumFavorites() > searchedVideo.getNumFavorites()) {
-                    searchedVideo = video;
-                }
+        Iterator<Video> ranking = rankings.iterateMostFavorite();
+        while (ranking.hasNext()) {
+            Video video = ranking.next();
+            if (!hasSeen(video.getId())) {
+                return "FavoriteRecommendation result: " + video.getTitle();
             }
-
         }
-        return "FavoriteRecommendation result: " + searchedVideo.getTitle();
+        return "FavoriteRecommendation cannot be applied!";
     }
 
     /**
      * recommend all unseen videos in a specific genre
-     * @param videoSet set of all video names
-     * @param videoDict dictionary of all videos
-     * @param genre genre to be filtered
+     * @param rankings orderings of the videos read by the recommendation
+     * @param genre id of the genre to be filtered, MISSING if no video has it
      * @return string result of recommendation
      */
-    public String recommendSearch(final LinkedHashSet<String> videoSet,
-                                  final HashMap<String, Video> videoDict,
-                                  final String genre) {
-        ArrayList<Video> videoList = getUnseenVideosByGenre(videoSet, videoDict, genre);
-        if (videoList.isEmpty() || !this.getSubscriptionType().equals(Constants.PREMIUM)) {
+    public String recommendSearch(final VideoRankings rankings, final int genre) {
+        if (genre == SymbolTable.MISSING
+            || !this.getSubscriptionType().equals(Constants.PREMIUM)) {
             return "SearchRecommendation cannot be applied!";
-        } else {
-            Collections.sort(videoList);
+        }
 
-            StringBuilder builder = new StringBuilder();
-            builder.append("SearchRecommendation result: [");
-            for (int i = 0; i < videoList.size() - 1; i++) {
-                builder.append(videoList.get(i).getTitle());
-                builder.append(", ");
+        StringBuilder builder = new StringBuilder();
+        builder.append("SearchRecommendation result: [");
+        boolean found = false;
+        Iterator<Video> ranking = rankings.iterateByRating(genre);
+        while (ranking.hasNext()) {
+            Video video = ranking.next();
+            if (!hasSeen(video.getId())) {
+                if (found) {
+                    builder.append(", ");
+                }
+                builder.append(video.getTitle());
+                found = true;
             }
-            builder.append(videoList.get(videoList.size() - 1).getTitle());
-            builder.append(']');
-            return builder.toString();
         }
+        if (!found) {
+            return "SearchRecommendation cannot be applied!";
+        }
+        builder.append(']');
+        return builder.toString();
     }
 
-    public ArrayList<String> getRatedMovies() {
+    public IntSet getRatedMovies() {
         return ratedMovies;
     }
 
     /**
      * add movie to rated movie list
-     * @param title title of rated movie
+     * @param videoId id of rated movie
      */
-    public void addToRatedMovies(final String title) {
-        this.getRatedMovies().add(title);
+    public void addToRatedMovies(final int videoId) {
+        this.getRatedMovies().add(videoId);
     }
 
     /**
-     * add show to rated show dictionary
-     * @param title title of rated show
+     * add season to the rated seasons
+     * @param videoId id of rated show
      * @param season season rated
      */
-    public void addToRatedShows(final String title, final int season) {
-        if (!this.ratedShows.containsKey(title)) {
-            HashSet<Integer> set = new HashSet<>();
-            set.add(season);
-            this.ratedShows.put(title, set);
-        } else {
-            this.ratedShows.get(title).add(season);
-        }
+    public void addToRatedShows(final int videoId, final int season) {
+        this.ratedShows.add(LongSet.pack(videoId, season));
     }
 
     /**
      * check if user has rated the show already
-     * @param title title of show
+     * @param videoId id of show
      * @param season number of season rated
      * @return truth value
      */
-    public boolean hasRatedShow(final String title, final int season) {
-        if (this.ratedShows.containsKey(title)) {
-            return this.ratedShows.get(title).contains(season);
-        } else {
-            return false;
-        }
+    public boolean hasRatedShow(final int videoId, final int season) {
+        return this.ratedShows.contains(LongSet.pack(videoId, season));
     }
 }
@@ -1,21 +1,30 @@
 package models.video;
 
+import database.VideoColumns;
 import fileio.MovieInputData;
 
+import java.util.ArrayList;
+
 /**
  * Class used to model movies
  */
 public final class Movie extends Video {
-    private final int duration;
-    private int numRatings;
+    public Movie(final MovieInputData movieData, final int id, final long genres,
+                 final VideoColumns columns) {
+        this(columns,
+             id,
+             movieData.getTitle(),
+             movieData.getYear(),
+             movieData.getCast(),
+             movieData.getGenres(),
+             genres,
+             movieData.getDuration());
+    }
 
-    public Movie(final MovieInputData movieData) {
-        super(movieData.getTitle(),
-              movieData.getYear(),
-              movieData.getCast(),
-              movieData.getGenres());
-        this.duration = movieData.getDuration();
-        this.numRatings = 0;
+    public Movie(final VideoColumns columns, final int id, final String title, final int year,
+                 final ArrayList<String> cast, final ArrayList<String> genreNames,
+                 final long genres, final int duration) {
+        super(columns, id, title, year, cast, genreNames, genres, duration);
     }
 
     /**
@@ -26,14 +35,10 @@ public final class Movie extends Video {
      *                                                    from Video class)
      */
     public void addRating(final double rate, final int seasonNum) {
-        this.numRatings++;
-        this.rating = this.rating
-                * (this.numRatings - 1) / this.numRatings + rate / this.numRatings;
-    }
-
-    @Override
-    public int getDuration() {
-        return duration;
+        int numRatings = this.columns.incrementNumRatings(this.getId());
+        double rating = this.getRating();
+        this.columns.setRating(this.getId(),
+                rating * (numRatings - 1) / numRatings + rate / numRatings);
     }
 
     @Override
@@ -41,8 +46,8 @@ public final class Movie extends Video {
         return "MovieInputData{" + "title= "
                 + super.getTitle() + "year= "
                 + super.getYear() + "duration= "
-                + duration + "cast {"
+                + super.getDuration() + "cast {"
                 + super.getCast() + " }\n"
-                + "genres {" + super.getGenres() + " }\n ";
+                + "genres {" + super.getGenreNames() + " }\n ";
     }
 }
@@ -1,10 +1,10 @@
 package models.video;
 
+import database.VideoColumns;
 import entertainment.Season;
 import fileio.SerialInputData;
 
 import java.util.ArrayList;
-import java.util.List;
 
 /**
  * Class for Show. Extends Video class
@@ -13,13 +13,32 @@ public final class Show extends Video {
     private final int numberOfSeasons;
     private final ArrayList<ShowSeason> seasons;
 
-    public Show(final SerialInputData showData) {
-        super(showData.getTitle(), showData.getYear(), showData.getCast(), showData.getGenres());
-        this.numberOfSeasons = showData.getNumberSeason();
-        this.seasons = new ArrayList<>();
-        for (Season season : showData.getSeasons()) {
-            this.seasons.add(new ShowSeason(season));
+    public Show(final SerialInputData showData, final int id, final long genres,
+                final VideoColumns columns) {
+        this(columns, id, showData.getTitle(), showData.getYear(), showData.getCast(),
+             showData.getGenres(), genres, showData.getNumberSeason(),
+             seasonsOf(showData.getSeasons()));
+    }
+
+    public Show(final VideoColumns columns, final int id, final String title, final int year,
+                final ArrayList<String> cast, final ArrayList<String> genreNames,
+                final long genres, final int numberOfSeasons,
+                final ArrayList<ShowSeason> seasons) {
+        super(columns, id, title, year, cast, genreNames, genres, totalDuration(seasons));
+        this.numberOfSeasons = numberOfSeasons;
+        this.seasons = seasons;
+    }
+
+    /**
+     * @param seasonsData input seasons
+     * @return seasons without ratings
+     */
+    private static ArrayList<ShowSeason> seasonsOf(final ArrayList<Season> seasonsData) {
+        ArrayList<ShowSeason> seasons = new ArrayList<>();
+        for (Season season : seasonsData) {
+            seasons.add(new ShowSeason(season));
         }
+        return seasons;
     }
 
     public int getNumberSeason() {
@@ -31,33 +50,26 @@ public final class Show extends Video {
     }
 
     /**
-     * adds rating to a season
+     * adds rating to a season.
+     * The show rating is computed again here, so reading it is O(1)
      * @param rate rating to be added
      * @param seasonNum number of season rated
      */
     public void addRating(final double rate, final int seasonNum) {
         this.getSeasons().get(seasonNum - 1).addRating(rate);
+        this.columns.incrementNumRatings(this.getId());
+        this.columns.setRating(this.getId(), computeRating());
     }
 
     /**
-     * Gets the rating of the shows.
+     * Computes the rating of the show.
      * Calculated as the mean of every season's average rating
      * @return rating of show
      */
-    @Override
-    public double getRating() {
+    private double computeRating() {
         double sum = 0;
         for (ShowSeason season : this.getSeasons()) {
-            List<Double> doubleArrayList = season.getRatings();
-            double seasonMean = 0;
-            for (Double rating : doubleArrayList) {
-                seasonMean += rating;
-            }
-
-            if (seasonMean != 0) {
-                seasonMean /= doubleArrayList.size();
-            }
-            sum += seasonMean;
+            sum += season.getRatingMean();
         }
 
         if (sum == 0) {
@@ -68,14 +80,14 @@ public final class Show extends Video {
     }
 
     /**
-     * Gets the duration of the Show.
+     * Gets the duration of a Show.
      * Calculated as the sum of every season duration
+     * @param seasons seasons of the show
      * @return duration
      */
-    @Override
-    public int getDuration() {
+    private static int totalDuration(final ArrayList<ShowSeason> seasons) {
         int duration = 0;
-        for (ShowSeason season : this.getSeasons()) {
+        for (ShowSeason season : seasons) {
             duration += season.getDuration();
         }
         return duration;
@@ -87,7 +99,7 @@ public final class Show extends Video {
                 + super.getTitle() + " " + " year= "
                 + super.getYear() + " cast {"
                 + super.getCast() + " }\n" + " genres {"
-                + super.getGenres() + " }\n "
+                + super.getGenreNames() + " }\n "
                 + " numberSeason= " + numberOfSeasons
                 + ", seasons=" + seasons + "\n\n" + '}';
     }
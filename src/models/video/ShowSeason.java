@@ -2,9 +2,6 @@ package models.video;
 
 import entertainment.Season;
 
-import java.util.ArrayList;
-import java.util.List;
-
 
 /**
  * Class modeling season of a show
@@ -12,20 +9,33 @@ import java.util.List;
 public final class ShowSeason {
     private final int currentSeason;
     private int duration;
-    private List<Double> ratings;
+    /**
+     * sum of the ratings, added in the order they were given
+     */
+    private double ratingSum;
+    private int numRatings;
 
     public ShowSeason(final Season seasonData) {
-        this.currentSeason = seasonData.getCurrentSeason();
-        this.duration = seasonData.getDuration();
-        this.ratings = new ArrayList<>();
+        this(seasonData.getCurrentSeason(), seasonData.getDuration());
+    }
+
+    public ShowSeason(final int currentSeason, final int duration) {
+        this.currentSeason = currentSeason;
+        this.duration = duration;
+        this.ratingSum = 0;
+        this.numRatings = 0;
+    }
+
+    public int getCurrentSeason() {
+        return currentSeason;
     }
 
     public int getDuration() {
         return duration;
     }
 
-    public List<Double> getRatings() {
-        return ratings;
+    public int getNumRatings() {
+        return numRatings;
     }
 
     /**
@@ -33,7 +43,19 @@ public final class ShowSeason {
      * @param rating rating to be added
      */
     public void addRating(final double rating) {
-        this.ratings.add(rating);
+        this.ratingSum += rating;
+        this.numRatings++;
+    }
+
+    /**
+     * Gets the average rating of the season, 0 if there is none
+     * @return mean of the ratings
+     */
+    public double getRatingMean() {
+        if (this.ratingSum == 0) {
+            return 0;
+        }
+        return this.ratingSum / this.numRatings;
     }
 
     @Override
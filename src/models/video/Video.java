@@ -1,7 +1,14 @@
 package models.video;
 
 import common.Constants;
+import database.Catalog;
+import database.Leaderboard;
+import database.SymbolTable;
+import database.VideoColumns;
+import database.VideoIndex;
+import database.VideoMetrics;
 import fileio.ActionInputData;
+import utils.TopK;
 
 import java.util.*;
 
@@ -10,52 +17,139 @@ import java.util.*;
  * Implements the comparable interface, used to sort by rating
  */
 public abstract class Video implements Comparable<Video> {
-    private final String title;
-    private final int year;
-    private final ArrayList<String> cast;
-    private final ArrayList<String> genres;
+    private static final int[] NO_GENRES = new int[0];
+
+    /**
+     * orders videos by duration, then by title
+     */
+    public static final Comparator<Video> DURATION_ORDER = (video1, video2) -> {
+        if (video1.getDuration() - video2.getDuration() == 0) {
+            return video1.getTitle().compareTo(video2.getTitle());
+        } else {
+            return video1.getDuration() - video2.getDuration();
+        }
+    };
+    /**
+     * orders videos by rating, highest first, then by position in the catalog
+     */
+    public static final Comparator<Video> BEST_RATED_ORDER = (video1, video2) -> {
+        if (Double.compare(video2.getRating(), video1.getRating()) == 0) {
+            return Integer.compare(video1.getId(), video2.getId());
+        } else {
+            return Double.compare(video2.getRating(), video1.getRating());
+        }
+    };
+    /**
+     * orders videos by number of times added to favorite, highest first, then by position
+     * in the catalog
+     */
+    public static final Comparator<Video> MOST_FAVORITE_ORDER = (video1, video2) -> {
+        if (video2.getNumFavorites() - video1.getNumFavorites() == 0) {
+            return Integer.compare(video1.getId(), video2.getId());
+        } else {
+            return video2.getNumFavorites() - video1.getNumFavorites();
+        }
+    };
+
+    /**
+     * orders videos by number of views read from some metrics, then by title. The live
+     * leaderboards use it on the columns of the catalog, the queries of the concurrent mode
+     * on a version of the metrics
+     * @param metrics counters of the videos
+     * @return comparator
+     */
+    public static Comparator<Video> viewsOrder(final VideoMetrics metrics) {
+        return (video1, video2) -> {
+            int views1 = metrics.getNumViews(video1.getId());
+            int views2 = metrics.getNumViews(video2.getId());
+            if (views1 - views2 == 0) {
+                return video1.getTitle().compareTo(video2.getTitle());
+            } else {
+                return views1 - views2;
+            }
+        };
+    }
+
+    /**
+     * orders videos by number of times added to favorite read from some metrics, then by
+     * title
+     * @param metrics counters of the videos
+     * @return comparator
+     */
+    public static Comparator<Video> favoritesOrder(final VideoMetrics metrics) {
+        return (video1, video2) -> {
+            int favorites1 = metrics.getNumFavorites(video1.getId());
+            int favorites2 = metrics.getNumFavorites(video2.getId());
+            if (favorites1 - favorites2 == 0) {
+                return video1.getTitle().compareTo(video2.getTitle());
+            } else {
+                return favorites1 - favorites2;
+            }
+        };
+    }
+
+    /**
+     * orders videos by rating read from some metrics, then by title, like
+     * {@link #compareTo}
+     * @param metrics counters of the videos
+     * @return comparator
+     */
+    public static Comparator<Video> ratingOrder(final VideoMetrics metrics) {
+        return (video1, video2) -> {
+            double rating1 = metrics.getRating(video1.getId());
+            double rating2 = metrics.getRating(video2.getId());
+            if (Double.compare(rating1, rating2) == 0) {
+                return video1.getTitle().compareTo(video2.getTitle());
+            } else {
+                return Double.compare(rating1, rating2);
+            }
+        };
+    }
 
-    protected double rating;
     /**
-     *  number of ratings
+     * position of the video in the catalog
      */
-    protected int numRatings;
+    private final int id;
+    private final String title;
+    private final ArrayList<String> cast;
     /**
-     *  number of times added to favorite by an user
+     * genre names, as given in the input
      */
-    protected int numFavorites;
+    private final ArrayList<String> genreNames;
     /**
-     *  number of times viewed by users
+     * columns holding the year, genres, duration and counters of the catalog videos
      */
-    protected int numViews;
+    protected final VideoColumns columns;
 
-    public Video(final String title,
+    public Video(final VideoColumns columns,
+                 final int id,
+                 final String title,
                  final int year,
                  final ArrayList<String> cast,
-                 final ArrayList<String> genres) {
+                 final ArrayList<String> genreNames,
+                 final long genres,
+                 final int duration) {
+        this.columns = columns;
+        this.id = id;
         this.title = title;
-        this.year = year;
         this.cast = cast;
-        this.genres = genres;
-        this.rating = 0;
-        this.numRatings = 0;
-        this.numFavorites = 0;
-        this.numViews = 0;
+        this.genreNames = genreNames;
+        columns.setStatic(id, year, genres, duration);
     }
 
     /**
      * increments the number of times this video was added to favorites
      */
-    public void incrementNumFavorites() {
-        this.numFavorites++;
+    public final void incrementNumFavorites() {
+        this.columns.incrementNumFavorites(this.id);
     }
 
     /**
      * updates the number of views of this video
      * @param views number of times this video was viewed
      */
-    public void addNumViews(final int views) {
-        this.numViews += views;
+    public final void addNumViews(final int views) {
+        this.columns.addNumViews(this.id, views);
     }
 
     /**
@@ -65,76 +159,120 @@ public abstract class Video implements Comparable<Video> {
      */
     public abstract void addRating(double rate, int season);
 
-    abstract int getDuration();
+    public final int getDuration() {
+        return this.columns.getDuration(this.id);
+    }
+
+    public final int getId() {
+        return id;
+    }
 
     public final String getTitle() {
         return title;
     }
 
     public final int getYear() {
-        return year;
+        return this.columns.getYear(this.id);
     }
 
     public final ArrayList<String> getCast() {
         return cast;
     }
 
-    public final ArrayList<String> getGenres() {
-        return genres;
+    public final long getGenres() {
+        return this.columns.getGenres(this.id);
     }
 
-    public double getRating() {
-        return rating;
+    public final ArrayList<String> getGenreNames() {
+        return genreNames;
+    }
+
+    /**
+     * checks if the video has all the genre bits of a bitmask
+     * @param genreMask bitmask of genres
+     * @return truth value
+     */
+    public final boolean hasAllGenres(final long genreMask) {
+        return this.columns.hasAllGenres(this.id, genreMask);
+    }
+
+    public final double getRating() {
+        return this.columns.getRating(this.id);
+    }
+
+    public final int getNumRatings() {
+        return this.columns.getNumRatings(this.id);
     }
 
     public final int getNumFavorites() {
-        return numFavorites;
+        return this.columns.getNumFavorites(this.id);
     }
 
     public final int getNumViews() {
-        return numViews;
+        return this.columns.getNumViews(this.id);
     }
 
     /**
-     * function that filters given video list by the given filters
-     * @param videos map of videos to be filtered
+     * function that filters the videos of an index by the given filters
+     * @param catalog catalog of all videos
+     * @param index index of the videos to be filtered (either movies or shows)
      * @param filters list of filters
      * @return list of filters shows
      */
-    public static ArrayList<Video> findShows(final HashMap<String, Video> videos,
+    public static ArrayList<Video> findShows(final Catalog catalog,
+                                             final VideoIndex index,
                                              final List<List<String>> filters) {
         ArrayList<Video> videoList = new ArrayList<>();
-        // if both filters present
-        if (filters.get(Constants.FILTER_YEAR).get(0) != null
-            && filters.get(Constants.FILTER_GENRE).get(0) != null) {
-            for (Video video : videos.values()) {
-                if (video.getYear() == Integer.parseInt(filters.get(Constants.FILTER_YEAR).get(0))
-                    && video.getGenres().containsAll(filters.get(Constants.FILTER_GENRE))) {
-                    videoList.add(video);
-                }
-            }
-        // if only year filter
-        } else if (filters.get(Constants.FILTER_YEAR).get(0) != null) {
-            for (Video video : videos.values()) {
-                if (video.getYear()
-                        == Integer.parseInt(filters.get(Constants.FILTER_YEAR).get(0))) {
-                    videoList.add(video);
-                }
-            }
-        // if only genre filter
-        } else if (filters.get(Constants.FILTER_GENRE).get(0) != null) {
-            for (Video video : videos.values()) {
-                if (video.getGenres().containsAll(filters.get(Constants.FILTER_GENRE))) {
-                    videoList.add(video);
+        boolean hasYear = filters.get(Constants.FILTER_YEAR).get(0) != null;
+        boolean hasGenre = filters.get(Constants.FILTER_GENRE).get(0) != null;
+        int year = hasYear ? Integer.parseInt(filters.get(Constants.FILTER_YEAR).get(0)) : 0;
+
+        int[] genres = NO_GENRES;
+        if (hasGenre) {
+            List<String> names = filters.get(Constants.FILTER_GENRE);
+            genres = new int[names.size()];
+            for (int i = 0; i < genres.length; i++) {
+                genres[i] = catalog.genreOf(names.get(i));
+                // no video has a genre that is not in the catalog
+                if (genres[i] == SymbolTable.MISSING) {
+                    return videoList;
                 }
             }
-            // if no filter
-        } else {
-            videoList.addAll(videos.values());
+        }
+
+        for (int id : index.find(catalog, hasYear, year, genres)) {
+            videoList.add(catalog.getVideo(id));
         }
         return videoList;
     }
 
+    /**
+     * checks if a query filters the videos by year or genre
+     * @param filters list of filters
+     * @return truth value
+     */
+    public static boolean hasFilters(final List<List<String>> filters) {
+        return filters.get(Constants.FILTER_YEAR).get(0) != null
+                || filters.get(Constants.FILTER_GENRE).get(0) != null;
+    }
+
+    /**
+     * query videos by reading the top of a leaderboard, without sorting
+     * @param leaderboard leaderboard of the queried metric
+     * @param action query data
+     * @return string of ordered query result
+     */
+    public static String queryLeaderboard(final Leaderboard<Video> leaderboard,
+                                          final ActionInputData action) {
+        if (leaderboard.isEmpty()) {
+            return "Query result: []";
+        }
+
+        ArrayList<Video> videoList = leaderboard.top(action.getNumber(),
+                action.getSortType().equals(Constants.ASCENDING));
+        return "Query result: " + parseQuery(videoList, action.getNumber());
+    }
+
     /**
      * parses the video list to string
      * @param videoList video list given
@@ -156,19 +294,24 @@ public abstract class Video implements Comparable<Video> {
     }
 
     /**
-     * function that sorts a given list using a specific comparator and specific order
+     * function that selects the first videos of a list using a specific comparator
+     * and specific order
      * @param order order in which the list to be sorted (ascending or descending)
      * @param videoList video list to be sorted
      * @param comparator comparator using for sorting
+     * @param number number of videos needed
+     * @return the first number videos, sorted
      */
-    public static void sortByOrder(final String order,
-                                   final ArrayList<Video> videoList,
-                                   final Comparator<Video> comparator) {
+    public static ArrayList<Video> sortByOrder(final String order,
+                                               final ArrayList<Video> videoList,
+                                               final Comparator<Video> comparator,
+                                               final int number) {
         if (order.equals(Constants.ASCENDING)) {
-            videoList.sort(comparator);
+            return TopK.select(videoList, comparator, number);
         } else if (order.equals(Constants.DESCENDING)) {
-            videoList.sort(Collections.reverseOrder(comparator));
+            return TopK.select(videoList, Collections.reverseOrder(comparator), number);
         }
+        return videoList;
     }
 
     /**
@@ -185,94 +328,76 @@ public abstract class Video implements Comparable<Video> {
             return "Query result: []";
         }
 
-        // comparator used to filter list
-        Comparator<Video> lengthComparator = (video1, video2) -> {
-            if (video1.getDuration() - video2.getDuration() == 0) {
-                return video1.getTitle().compareTo(video2.getTitle());
-            } else {
-                return video1.getDuration() - video2.getDuration();
-            }
-        };
-        sortByOrder(action.getSortType(), filteredVideos, lengthComparator);
+        ArrayList<Video> videoList = sortByOrder(action.getSortType(), filteredVideos,
+                                                 DURATION_ORDER, action.getNumber());
 
-        return "Query result: " + parseQuery(filteredVideos, action.getNumber());
+        return "Query result: " + parseQuery(videoList, action.getNumber());
     }
 
     /**
      * query videos by rating
      * @param filteredVideos videos to be sorted
+     * @param metrics counters of the videos
      * @param action query data
      * @return string of ordered query result
      */
     public static String queryRating(final ArrayList<Video> filteredVideos,
+                                     final VideoMetrics metrics,
                                      final ActionInputData action) {
-        filteredVideos.removeIf(video -> video.getRating() == 0);
+        filteredVideos.removeIf(video -> metrics.getRating(video.getId()) == 0);
 
         if (filteredVideos.isEmpty()) {
             return "Query result: []";
         }
 
-        if (action.getSortType().equals(Constants.ASCENDING)) {
-            Collections.sort(filteredVideos);
-        } else if (action.getSortType().equals(Constants.DESCENDING)) {
-            Collections.sort(filteredVideos, Collections.reverseOrder());
-        }
+        ArrayList<Video> videoList = sortByOrder(action.getSortType(), filteredVideos,
+                                                 ratingOrder(metrics), action.getNumber());
 
-        return "Query result: " + parseQuery(filteredVideos, action.getNumber());
+        return "Query result: " + parseQuery(videoList, action.getNumber());
     }
 
     /**
      * query videos by number of times added to favorite
      * @param filteredVideos videos to be sorted
+     * @param metrics counters of the videos
      * @param action query data
      * @return string of ordered query result
      */
     public static String queryFavorite(final ArrayList<Video> filteredVideos,
+                                       final VideoMetrics metrics,
                                        final ActionInputData action) {
-        filteredVideos.removeIf(video -> video.getNumFavorites() == 0);
+        filteredVideos.removeIf(video -> metrics.getNumFavorites(video.getId()) == 0);
 
         if (filteredVideos.isEmpty()) {
             return "Query result: []";
         }
 
-        // comparator used to filter list
-        Comparator<Video> favoriteComparator = (video1, video2) -> {
-            if (video1.getNumFavorites() - video2.getNumFavorites() == 0) {
-                return video1.getTitle().compareTo(video2.getTitle());
-            } else {
-                return video1.getNumFavorites() - video2.getNumFavorites();
-            }
-        };
-        sortByOrder(action.getSortType(), filteredVideos, favoriteComparator);
+        ArrayList<Video> videoList = sortByOrder(action.getSortType(), filteredVideos,
+                                                 favoritesOrder(metrics), action.getNumber());
 
-        return "Query result: " + parseQuery(filteredVideos, action.getNumber());
+        return "Query result: " + parseQuery(videoList, action.getNumber());
     }
 
     /**
      * query videos by number of times viewed
      * @param filteredVideos videos to be sorted
+     * @param metrics counters of the videos
      * @param action query data
      * @return string of ordered query result
      */
     public static String queryMostViewed(final ArrayList<Video> filteredVideos,
+                                         final VideoMetrics metrics,
                                          final ActionInputData action) {
-        filteredVideos.removeIf(video -> video.getNumViews() == 0);
+        filteredVideos.removeIf(video -> metrics.getNumViews(video.getId()) == 0);
 
         if (filteredVideos.isEmpty()) {
             return "Query result: []";
         }
 
-        // comparator used to filter list
-        Comparator<Video> viewsComparator = (video1, video2) -> {
-            if (video1.getNumViews() - video2.getNumViews() == 0) {
-                return video1.getTitle().compareTo(video2.getTitle());
-            } else {
-                return video1.getNumViews() - video2.getNumViews();
-            }
-        };
-        sortByOrder(action.getSortType(), filteredVideos, viewsComparator);
+        ArrayList<Video> videoList = sortByOrder(action.getSortType(), filteredVideos,
+                                                 viewsOrder(metrics), action.getNumber());
 
-        return "Query result: " + parseQuery(filteredVideos, action.getNumber());
+        return "Query result: " + parseQuery(videoList, action.getNumber());
     }
 
     /**
@@ -0,0 +1,154 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Map from int keys to int values, without boxing.
+ * The entries are kept in two dense arrays, in insertion order, and an open addressed
+ * table with linear probing maps every key to its entry. Iterating by entry index gives
+ * the same order as a LinkedHashMap. Entries are never removed.
+ */
+public final class IntIntMap {
+    private static final int DEFAULT_CAPACITY = 8;
+    /**
+     * empty slots of the table hold this value, the others hold entry index + 1
+     */
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int[] table;
+    private int size;
+
+    public IntIntMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity expected number of entries
+     */
+    public IntIntMap(final int capacity) {
+        int entries = Math.max(capacity, DEFAULT_CAPACITY);
+        this.keys = new int[entries];
+        this.values = new int[entries];
+        this.table = new int[Integer.highestOneBit(entries - 1) << 2];
+        this.size = 0;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param index entry index, in insertion order
+     * @return key of the entry
+     */
+    public int keyAt(final int index) {
+        return this.keys[index];
+    }
+
+    /**
+     * @param index entry index, in insertion order
+     * @return value of the entry
+     */
+    public int valueAt(final int index) {
+        return this.values[index];
+    }
+
+    /**
+     * @param key key to be checked
+     * @return true if the map has the key
+     */
+    public boolean containsKey(final int key) {
+        return this.table[slotOf(key)] != EMPTY;
+    }
+
+    /**
+     * @param key key to be searched
+     * @param defaultValue value returned if the key is missing
+     * @return value of the key
+     */
+    public int get(final int key, final int defaultValue) {
+        int entry = this.table[slotOf(key)];
+        return entry == EMPTY ? defaultValue : this.values[entry - 1];
+    }
+
+    /**
+     * puts a value, keeping the position of an existing key
+     * @param key key of the entry
+     * @param value value of the entry
+     */
+    public void put(final int key, final int value) {
+        int slot = slotOf(key);
+        if (this.table[slot] != EMPTY) {
+            this.values[this.table[slot] - 1] = value;
+        } else {
+            insert(slot, key, value);
+        }
+    }
+
+    /**
+     * adds to the value of a key, like {@code merge(key, delta, Integer::sum)}
+     * @param key key of the entry
+     * @param delta value to be added, or the value of a new entry
+     * @return the new value
+     */
+    public int addTo(final int key, final int delta) {
+        int slot = slotOf(key);
+        if (this.table[slot] != EMPTY) {
+            return this.values[this.table[slot] - 1] += delta;
+        }
+        insert(slot, key, delta);
+        return delta;
+    }
+
+    /**
+     * adds a new entry
+     * @param slot empty slot found for the key
+     * @param key key of the entry
+     * @param value value of the entry
+     */
+    private void insert(final int slot, final int key, final int value) {
+        if (this.size == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.keys[this.size] = key;
+        this.values[this.size] = value;
+        this.size++;
+        // the table is kept at most half full
+        if (this.size * 2 > this.table.length) {
+            rehash(this.table.length * 2);
+        } else {
+            this.table[slot] = this.size;
+        }
+    }
+
+    /**
+     * builds the table again with a new size
+     * @param tableSize new size, a power of two
+     */
+    private void rehash(final int tableSize) {
+        this.table = new int[tableSize];
+        for (int entry = 0; entry < this.size; entry++) {
+            this.table[slotOf(this.keys[entry])] = entry + 1;
+        }
+    }
+
+    /**
+     * finds the slot of a key, or the empty slot where it would be put
+     * @param key key to be searched
+     * @return slot index
+     */
+    private int slotOf(final int key) {
+        int mask = this.table.length - 1;
+        int slot = Utils.mixHash(key) & mask;
+        while (this.table[slot] != EMPTY && this.keys[this.table[slot] - 1] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,118 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of int values, without boxing.
+ * Open addressed table with linear probing, kept at most half full. Values are never
+ * removed.
+ */
+public final class IntSet {
+    private static final int DEFAULT_CAPACITY = 8;
+    /**
+     * marks an empty slot. The value itself is tracked apart
+     */
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] table;
+    private int size;
+    private boolean hasEmptyValue;
+
+    public IntSet() {
+        this.table = newTable(DEFAULT_CAPACITY * 2);
+        this.size = 0;
+        this.hasEmptyValue = false;
+    }
+
+    /**
+     * @return number of values
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param value value to be checked
+     * @return true if the set has the value
+     */
+    public boolean contains(final int value) {
+        if (value == EMPTY) {
+            return this.hasEmptyValue;
+        }
+        return this.table[slotOf(this.table, value)] == value;
+    }
+
+    /**
+     * adds a value
+     * @param value value to be added
+     * @return true if the value was not in the set
+     */
+    public boolean add(final int value) {
+        if (value == EMPTY) {
+            if (this.hasEmptyValue) {
+                return false;
+            }
+            this.hasEmptyValue = true;
+            this.size++;
+            return true;
+        }
+        int slot = slotOf(this.table, value);
+        if (this.table[slot] == value) {
+            return false;
+        }
+        this.table[slot] = value;
+        this.size++;
+        if (this.size * 2 > this.table.length) {
+            int[] old = this.table;
+            this.table = newTable(old.length * 2);
+            for (int stored : old) {
+                if (stored != EMPTY) {
+                    this.table[slotOf(this.table, stored)] = stored;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return every value of the set, in no particular order
+     */
+    public int[] toArray() {
+        int[] values = new int[this.size];
+        int count = 0;
+        if (this.hasEmptyValue) {
+            values[count++] = EMPTY;
+        }
+        for (int stored : this.table) {
+            if (stored != EMPTY) {
+                values[count++] = stored;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param length size of the table, a power of two
+     * @return table with all the slots empty
+     */
+    private static int[] newTable(final int length) {
+        int[] table = new int[length];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    /**
+     * finds the slot of a value, or the empty slot where it would be put
+     * @param table table to be searched
+     * @param value value to be searched
+     * @return slot index
+     */
+    private static int slotOf(final int[] table, final int value) {
+        int mask = table.length - 1;
+        int slot = Utils.mixHash(value) & mask;
+        while (table[slot] != EMPTY && table[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,112 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of long values, without boxing.
+ * Open addressed table with linear probing, kept at most half full. Values are never
+ * removed. Used for pairs of ints packed in a long with {@link #pack}.
+ */
+public final class LongSet {
+    private static final int DEFAULT_CAPACITY = 8;
+    /**
+     * marks an empty slot. The value itself is tracked apart
+     */
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final long LOW_MASK = 0xFFFFFFFFL;
+
+    private long[] table;
+    private int size;
+    private boolean hasEmptyValue;
+
+    public LongSet() {
+        this.table = newTable(DEFAULT_CAPACITY * 2);
+        this.size = 0;
+        this.hasEmptyValue = false;
+    }
+
+    /**
+     * packs two ints in a long
+     * @param high first int, in the high half
+     * @param low second int, in the low half
+     * @return packed value
+     */
+    public static long pack(final int high, final int low) {
+        return ((long) high << Integer.SIZE) | (low & LOW_MASK);
+    }
+
+    /**
+     * @return number of values
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param value value to be checked
+     * @return true if the set has the value
+     */
+    public boolean contains(final long value) {
+        if (value == EMPTY) {
+            return this.hasEmptyValue;
+        }
+        return this.table[slotOf(this.table, value)] == value;
+    }
+
+    /**
+     * adds a value
+     * @param value value to be added
+     * @return true if the value was not in the set
+     */
+    public boolean add(final long value) {
+        if (value == EMPTY) {
+            if (this.hasEmptyValue) {
+                return false;
+            }
+            this.hasEmptyValue = true;
+            this.size++;
+            return true;
+        }
+        int slot = slotOf(this.table, value);
+        if (this.table[slot] == value) {
+            return false;
+        }
+        this.table[slot] = value;
+        this.size++;
+        if (this.size * 2 > this.table.length) {
+            long[] old = this.table;
+            this.table = newTable(old.length * 2);
+            for (long stored : old) {
+                if (stored != EMPTY) {
+                    this.table[slotOf(this.table, stored)] = stored;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param length size of the table, a power of two
+     * @return table with all the slots empty
+     */
+    private static long[] newTable(final int length) {
+        long[] table = new long[length];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    /**
+     * finds the slot of a value, or the empty slot where it would be put
+     * @param table table to be searched
+     * @param value value to be searched
+     * @return slot index
+     */
+    private static int slotOf(final long[] table, final long value) {
+        int mask = table.length - 1;
+        int slot = Utils.mixHash((int) (value ^ (value >>> Integer.SIZE))) & mask;
+        while (table[slot] != EMPTY && table[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
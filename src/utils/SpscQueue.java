@@ -0,0 +1,165 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded queue for exactly one producer thread and one consumer thread, without locks.
+ * The elements live in a ring buffer whose size is a power of two. The producer only moves
+ * the tail and the consumer only moves the head, each one publishing its position with an
+ * ordered write; both keep a cached copy of the other position, so they only read the shared
+ * one when the queue looks full or empty.
+ * {@link #put} and {@link #take} wait while the queue is full or empty, spinning first and
+ * then parking for short periods, which gives backpressure to a faster producer. Their
+ * cancellable forms give up waiting once a condition holds, so a stage whose peer failed does
+ * not wait forever.
+ * @param <T> type of the elements
+ */
+public final class SpscQueue<T> {
+    private static final int SPINS = 100;
+    private static final long PARK_NANOS = 20_000L;
+
+    private final Object[] buffer;
+    private final int mask;
+    /**
+     * position of the next element to be taken, moved by the consumer
+     */
+    private final AtomicLong head;
+    /**
+     * position of the next element to be put, moved by the producer
+     */
+    private final AtomicLong tail;
+    /**
+     * head as last seen by the producer
+     */
+    private long cachedHead;
+    /**
+     * tail as last seen by the consumer
+     */
+    private long cachedTail;
+
+    /**
+     * @param capacity minimum number of elements, rounded up to a power of two
+     */
+    public SpscQueue(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("the capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+        this.head = new AtomicLong();
+        this.tail = new AtomicLong();
+    }
+
+    /**
+     * adds an element, called by the producer only
+     * @param element element to be added, not null
+     * @return false if the queue is full
+     */
+    public boolean offer(final T element) {
+        long position = this.tail.get();
+        if (position - this.cachedHead == this.buffer.length) {
+            this.cachedHead = this.head.get();
+            if (position - this.cachedHead == this.buffer.length) {
+                return false;
+            }
+        }
+        this.buffer[(int) position & this.mask] = element;
+        this.tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * removes the oldest element, called by the consumer only
+     * @return the element, null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public T poll() {
+        long position = this.head.get();
+        if (position == this.cachedTail) {
+            this.cachedTail = this.tail.get();
+            if (position == this.cachedTail) {
+                return null;
+            }
+        }
+        int index = (int) position & this.mask;
+        T element = (T) this.buffer[index];
+        this.buffer[index] = null;
+        this.head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * adds an element, waiting while the queue is full
+     * @param element element to be added, not null
+     */
+    public void put(final T element) {
+        put(element, () -> false);
+    }
+
+    /**
+     * adds an element, waiting while the queue is full until the wait is cancelled
+     * @param element element to be added, not null
+     * @param cancelled checked while waiting, true to stop waiting
+     * @return false if the wait was cancelled and the element was not added
+     */
+    public boolean put(final T element, final BooleanSupplier cancelled) {
+        for (int attempt = 0; !offer(element); attempt++) {
+            if (cancelled.getAsBoolean()) {
+                return false;
+            }
+            backOff(attempt);
+        }
+        return true;
+    }
+
+    /**
+     * removes the oldest element, waiting while the queue is empty
+     * @return the element
+     */
+    public T take() {
+        return take(() -> false);
+    }
+
+    /**
+     * removes the oldest element, waiting while the queue is empty until the wait is
+     * cancelled
+     * @param cancelled checked while waiting, true to stop waiting
+     * @return the element, null if the wait was cancelled
+     */
+    public T take(final BooleanSupplier cancelled) {
+        T element = poll();
+        for (int attempt = 0; element == null; attempt++) {
+            if (cancelled.getAsBoolean()) {
+                return null;
+            }
+            backOff(attempt);
+            element = poll();
+        }
+        return element;
+    }
+
+    /**
+     * @return maximum number of elements
+     */
+    public int capacity() {
+        return this.buffer.length;
+    }
+
+    /**
+     * waits a little before trying again
+     * @param attempt number of failed attempts
+     */
+    private static void backOff(final int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Selection of the first k elements of a list in a given order.
+ * For a small k, a bounded heap holding the k best elements seen so far is used, so the
+ * cost is O(n log k) and only k slots are allocated. When k is close to the size of the
+ * list, a full sort is cheaper and is used instead.
+ */
+public final class TopK {
+    /**
+     * a full sort is used when k is at least 1 / FULL_SORT_RATIO of the list
+     */
+    private static final int FULL_SORT_RATIO = 4;
+
+    /**
+     * for coding style
+     */
+    private TopK() {
+    }
+
+    /**
+     * gets the first k elements of a list, sorted
+     * @param items elements to select from. The list may be reordered
+     * @param order order of the elements. It must be total for the result to be unique
+     * @param k number of elements
+     * @param <T> type of the elements
+     * @return the first min(k, size) elements in the given order
+     */
+    public static <T> ArrayList<T> select(final List<T> items,
+                                          final Comparator<? super T> order,
+                                          final int k) {
+        int limit = Math.max(0, Math.min(k, items.size()));
+        if (limit == 0) {
+            return new ArrayList<>();
+        }
+
+        if ((long) limit * FULL_SORT_RATIO >= items.size()) {
+            items.sort(order);
+            return new ArrayList<>(items.subList(0, limit));
+        }
+
+        // the root of the heap is the worst of the k best elements
+        PriorityQueue<T> heap = new PriorityQueue<>(limit, order.reversed());
+        for (T item : items) {
+            if (heap.size() < limit) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        ArrayList<T> selected = new ArrayList<>(heap);
+        selected.sort(order);
+        return selected;
+    }
+}
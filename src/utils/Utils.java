@@ -16,6 +16,16 @@ import java.util.LinkedHashMap;
  * We suggest you add your static methods here or in a similar class.
  */
 public final class Utils {
+    /**
+     * multiplier of the Fibonacci hashing used by the primitive collections
+     */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+    private static final int HASH_SHIFT = 16;
+    /**
+     * last bit of a genre bitmask, shared by every genre id from this one on
+     */
+    public static final int SHARED_GENRE_BIT = Long.SIZE - 1;
+
     /**
      * for coding style
      */
@@ -53,6 +63,36 @@ public final class Utils {
         };
     }
 
+    /**
+     * Gets the bit of a genre in a genre bitmask. Genre ids from {@link #SHARED_GENRE_BIT}
+     * on share the last bit, so for them the bit is only a hint
+     * @param genre genre id
+     * @return a long with only the bit of the genre set
+     */
+    public static long genreBit(final int genre) {
+        return 1L << Math.min(genre, SHARED_GENRE_BIT);
+    }
+
+    /**
+     * Spreads the bits of a key, so consecutive ids do not fill consecutive slots of an
+     * open addressed table
+     * @param key key to be hashed
+     * @return mixed hash
+     */
+    public static int mixHash(final int key) {
+        int hash = key * HASH_MULTIPLIER;
+        return hash ^ (hash >>> HASH_SHIFT);
+    }
+
+    /**
+     * Gets the bit of an award in an award bitmask
+     * @param award for actors
+     * @return a long with only the bit of the award set
+     */
+    public static long awardBit(final ActorsAwards award) {
+        return 1L << award.ordinal();
+    }
+
     /**
      * Transforms a string into an enum
      * @param award for actors